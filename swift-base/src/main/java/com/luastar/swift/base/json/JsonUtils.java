@@ -11,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Map;
@@ -64,6 +65,25 @@ public class JsonUtils {
         return null;
     }
 
+    /**
+     * 序列化后直接写入输出流（UTF-8），不生成中间字符串
+     * <p>
+     * 序列化失败时抛出异常，输出流中可能已经写入了部分内容，由调用方丢弃
+     */
+    public static void writeJson(OutputStream out, Object obj) throws IOException {
+        if (obj == null) {
+            return;
+        }
+        defaultMapper.writeValue(out, obj);
+    }
+
+    public static void writeJsonSnake(OutputStream out, Object obj) throws IOException {
+        if (obj == null) {
+            return;
+        }
+        snakeMapper.writeValue(out, obj);
+    }
+
     public static <T> T toObj(String json, Class<T> clazz) {
         try {
             if (StringUtils.isEmpty(json)) {
@@ -0,0 +1,300 @@
+package com.luastar.swift.base.thread;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界多生产者多消费者数组队列，入队出队无锁（Dmitry Vyukov 的 bounded MPMC queue）
+ * <p>
+ * 1. 每个槽位一个序号，生产者和消费者各自 CAS 递增位置，不像 LinkedBlockingQueue 那样争用 putLock 和 takeLock.
+ * <p>
+ * 2. 只有消费者在空队列上阻塞等待时才使用锁：消费者登记等待后再检查一次队列，生产者入队后有等待者才加锁唤醒.
+ * <p>
+ * 3. {@link #remove(Object)} 扫描数组，把找到的元素 CAS 替换为删除标记，消费者取到删除标记时跳过该槽位；
+ * 消费者通过 getAndSet 取出元素，与删除只会有一个成功. 迭代器是弱一致的快照，通过迭代器删除不影响队列.
+ */
+public class MpmcArrayBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /**
+     * 队列满时 offer(e, timeout, unit) 和 put 的重试间隔
+     */
+    private static final long RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final int capacity;
+
+    /**
+     * 被 remove 删除的元素替换为该标记
+     */
+    private static final Object REMOVED = new Object();
+
+    private final AtomicReferenceArray<Object> buffer;
+
+    /**
+     * 槽位序号：等于位置时可以入队，等于位置 + 1 时可以出队
+     */
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong enqueuePosition = new AtomicLong();
+
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    /**
+     * 阻塞等待的消费者数
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    public MpmcArrayBlockingQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position % capacity);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, e);
+                    sequences.set(index, position + 1);
+                    break;
+                }
+                position = enqueuePosition.get();
+            } else if (diff < 0) {
+                // 队列已满
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+        if (waiters.get() > 0) {
+            signalNotEmpty();
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = dequeuePosition.get();
+        while (true) {
+            int index = (int) (position % capacity);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    Object e = buffer.getAndSet(index, null);
+                    sequences.set(index, position + capacity);
+                    if (e != REMOVED) {
+                        return (E) e;
+                    }
+                    // 已经被 remove 删除，继续取下一个
+                }
+                position = dequeuePosition.get();
+            } else if (diff < 0) {
+                // 队列为空
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(e)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, RETRY_NANOS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        while (!offer(e)) {
+            LockSupport.parkNanos(this, RETRY_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+        lock.lockInterruptibly();
+        waiters.incrementAndGet();
+        try {
+            while ((e = poll()) == null) {
+                notEmpty.await();
+            }
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+        signalIfRemaining();
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        waiters.incrementAndGet();
+        try {
+            while ((e = poll()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+        signalIfRemaining();
+        return e;
+    }
+
+    /**
+     * 多个元素入队时只唤醒一个等待者，取到元素后如果还有剩余继续唤醒下一个
+     */
+    private void signalIfRemaining() {
+        if (waiters.get() > 0 && !isEmpty()) {
+            signalNotEmpty();
+        }
+    }
+
+    private void signalNotEmpty() {
+        lock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long position = dequeuePosition.get();
+        int index = (int) (position % capacity);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        Object e = buffer.get(index);
+        return e != REMOVED ? (E) e : null;
+    }
+
+    /**
+     * 并发修改时为近似值
+     */
+    @Override
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    /**
+     * 扫描数组删除一个相等的元素，O(capacity)，只用于 ThreadPoolExecutor 的 remove 等少见操作
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        for (int i = 0; i < capacity; i++) {
+            Object e = buffer.get(i);
+            if (e != null && e != REMOVED && o.equals(e) && buffer.compareAndSet(i, e, REMOVED)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null) {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 弱一致的快照，通过迭代器删除不影响队列
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long end = enqueuePosition.get();
+        for (long position = dequeuePosition.get(); position < end; position++) {
+            int index = (int) (position % capacity);
+            if (sequences.get(index) == position + 1) {
+                Object e = buffer.get(index);
+                if (e != null && e != REMOVED) {
+                    snapshot.add((E) e);
+                }
+            }
+        }
+        return snapshot.iterator();
+    }
+
+}
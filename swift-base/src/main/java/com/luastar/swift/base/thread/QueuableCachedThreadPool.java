@@ -1,7 +1,13 @@
 package com.luastar.swift.base.thread;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * From Tomcat 8.5.6, 传统的FixedThreadPool有Queue但线程数量不变，而CachedThreadPool线程数可变但没有Queue
@@ -14,10 +20,16 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <p>
  * 2. TaskQueue中可能3次有锁的读取线程数量，改为只读取1次，这把锁也是这个实现里的唯一遗憾了。
  * <p>
+ * 3. 线程数由 ThreadFactory 包装后用原子变量计数，入队时不再读取有锁的 getPoolSize()；队列改为无锁的 {@link MpmcArrayBlockingQueue}。
+ * <p>
+ * 4. 可选记录任务的排队时间，并按 CoDel 的方式丢弃过载时排队过久的任务，见 {@link Codel}。
+ * <p>
  * https://github.com/apache/tomcat/blob/trunk/java/org/apache/tomcat/util/threads/ThreadPoolExecutor.java
  */
 public final class QueuableCachedThreadPool extends java.util.concurrent.ThreadPoolExecutor {
 
+    private static final Logger logger = LoggerFactory.getLogger(QueuableCachedThreadPool.class);
+
     /**
      * The number of tasks submitted but not yet finished. This includes tasks in the queue and tasks that have been
      * handed to a worker thread but the latter did not start executing the task yet. This number is always greater or
@@ -25,16 +37,80 @@ public final class QueuableCachedThreadPool extends java.util.concurrent.ThreadP
      */
     private final AtomicInteger submittedCount = new AtomicInteger(0);
 
+    /**
+     * 排队时间（纳秒）回调，为空不回调
+     */
+    private final LongConsumer queueTimeListener;
+
+    /**
+     * 为空不丢弃排队过久的任务
+     */
+    private final Codel codel;
+
+    /**
+     * 丢弃任务的回调，在取出任务的线程中执行，参数为提交的任务
+     */
+    private final Consumer<Runnable> expiredHandler;
+
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * 当前线程数，不加锁
+     */
+    private final AtomicInteger threadCount;
+
     public QueuableCachedThreadPool(int corePoolSize, int maximumPoolSize,
                                     long keepAliveTime, TimeUnit unit,
                                     ControllableQueue workQueue,
                                     ThreadFactory threadFactory,
                                     RejectedExecutionHandler handler) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler, null, 0, 0, null);
+    }
+
+    /**
+     * @param queueTimeListener 排队时间（纳秒）回调，为空不回调
+     * @param targetDelayMillis 目标排队时间（毫秒），小于等于 0 不丢弃任务
+     * @param intervalMillis    判断是否过载的时间窗口（毫秒）
+     * @param expiredHandler    丢弃任务的回调，为空时取消 Future 类型的任务
+     */
+    public QueuableCachedThreadPool(int corePoolSize, int maximumPoolSize,
+                                    long keepAliveTime, TimeUnit unit,
+                                    ControllableQueue workQueue,
+                                    ThreadFactory threadFactory,
+                                    RejectedExecutionHandler handler,
+                                    LongConsumer queueTimeListener,
+                                    long targetDelayMillis,
+                                    long intervalMillis,
+                                    Consumer<Runnable> expiredHandler) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, new CountingThreadFactory(threadFactory), handler,
+                queueTimeListener, targetDelayMillis, intervalMillis, expiredHandler);
+    }
+
+    private QueuableCachedThreadPool(int corePoolSize, int maximumPoolSize,
+                                     long keepAliveTime, TimeUnit unit,
+                                     ControllableQueue workQueue,
+                                     CountingThreadFactory threadFactory,
+                                     RejectedExecutionHandler handler,
+                                     LongConsumer queueTimeListener,
+                                     long targetDelayMillis,
+                                     long intervalMillis,
+                                     Consumer<Runnable> expiredHandler) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        this.threadCount = threadFactory.count;
+        this.queueTimeListener = queueTimeListener;
+        this.codel = targetDelayMillis > 0 ? new Codel(TimeUnit.MILLISECONDS.toNanos(targetDelayMillis), TimeUnit.MILLISECONDS.toNanos(intervalMillis)) : null;
+        this.expiredHandler = expiredHandler;
         workQueue.setParent(this);
         prestartAllCoreThreads(); //NOSOANR
     }
 
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        if (queueTimeListener != null && r instanceof TimedTask) {
+            queueTimeListener.accept(System.nanoTime() - ((TimedTask) r).enqueueNanos);
+        }
+    }
+
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
         submittedCount.decrementAndGet();
@@ -44,6 +120,57 @@ public final class QueuableCachedThreadPool extends java.util.concurrent.ThreadP
         return submittedCount.get();
     }
 
+    /**
+     * 当前线程数，不加锁，与 {@link #getPoolSize()} 相比可能包含正在退出的线程，不包含刚创建还没有运行的线程
+     */
+    public int getThreadCount() {
+        return threadCount.get();
+    }
+
+    /**
+     * 因排队过久被丢弃的任务数
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * 取出任务时判断是否丢弃，丢弃时调用回调
+     *
+     * @return true 表示已丢弃
+     */
+    private boolean expire(Runnable r) {
+        if (codel == null || !(r instanceof TimedTask)) {
+            return false;
+        }
+        long delay = System.nanoTime() - ((TimedTask) r).enqueueNanos;
+        if (!codel.shouldDrop(delay)) {
+            return false;
+        }
+        expiredCount.incrementAndGet();
+        submittedCount.decrementAndGet();
+        Runnable task = ((TimedTask) r).task;
+        try {
+            if (expiredHandler != null) {
+                expiredHandler.accept(task);
+            } else if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        } catch (Throwable e) {
+            logger.error("丢弃任务的回调执行异常", e);
+        }
+        return true;
+    }
+
+    /**
+     * 队列已经排空，结束过载状态
+     */
+    private void drained() {
+        if (codel != null) {
+            codel.reset();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -65,6 +192,12 @@ public final class QueuableCachedThreadPool extends java.util.concurrent.ThreadP
      * @throws NullPointerException       if command or unit is null
      */
     public void execute(Runnable command, long timeout, TimeUnit unit) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (queueTimeListener != null || codel != null) {
+            command = new TimedTask(command, System.nanoTime());
+        }
         submittedCount.incrementAndGet();
         try {
             super.execute(command);
@@ -87,7 +220,7 @@ public final class QueuableCachedThreadPool extends java.util.concurrent.ThreadP
     /**
      * https://github.com/apache/tomcat/blob/trunk/java/org/apache/tomcat/util/threads/TaskQueue.java
      */
-    protected static class ControllableQueue extends LinkedBlockingQueue<Runnable> {
+    protected static class ControllableQueue extends MpmcArrayBlockingQueue<Runnable> {
 
         private static final long serialVersionUID = 5044057462066661171L;
         private transient volatile QueuableCachedThreadPool parent = null;
@@ -114,11 +247,44 @@ public final class QueuableCachedThreadPool extends java.util.concurrent.ThreadP
             return super.offer(o, timeout, unit); // forces the item onto the queue, to be used if the task is rejected
         }
 
+        @Override
+        public Runnable take() throws InterruptedException {
+            Runnable r = super.poll();
+            if (r == null) {
+                parent.drained();
+                r = super.take();
+            }
+            return skipExpired(r);
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            Runnable r = super.poll();
+            if (r == null) {
+                parent.drained();
+                r = super.poll(timeout, unit);
+            }
+            return skipExpired(r);
+        }
+
+        /**
+         * 跳过被丢弃的任务，丢弃后不再阻塞等待，队列为空时返回 null，由线程池重新判断线程是否退出（比如已经 shutdown）
+         */
+        private Runnable skipExpired(Runnable r) {
+            while (r != null && parent.expire(r)) {
+                r = super.poll();
+                if (r == null) {
+                    parent.drained();
+                }
+            }
+            return r;
+        }
+
         @Override
         public boolean offer(Runnable o) {
             // springside: threadPool.getPoolSize() 是个有锁的操作，所以尽量减少
-
-            int currentPoolSize = parent.getPoolSize();
+            // swift: 改为读取 ThreadFactory 维护的计数，不加锁
+            int currentPoolSize = parent.getThreadCount();
 
             // we are maxed out on threads, simply queue the object
             if (currentPoolSize >= parent.getMaximumPoolSize()) {
@@ -137,4 +303,116 @@ public final class QueuableCachedThreadPool extends java.util.concurrent.ThreadP
         }
     }
 
+    /**
+     * 线程开始运行时计数加一，退出时减一
+     * <p>
+     * 不在 newThread 中计数：ThreadPoolExecutor 创建线程后可能因为已经 shutdown 不再启动，创建时计数会一直无法减掉。
+     * 刚创建还没有运行的线程不计数，入队时可能少算，最多多尝试创建线程，线程数仍由 maximumPoolSize 限制。
+     */
+    private static final class CountingThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory threadFactory;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private CountingThreadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return threadFactory.newThread(() -> {
+                count.incrementAndGet();
+                try {
+                    r.run();
+                } finally {
+                    count.decrementAndGet();
+                }
+            });
+        }
+
+    }
+
+    /**
+     * 记录入队时间的任务
+     */
+    private static final class TimedTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long enqueueNanos;
+
+        private TimedTask(Runnable task, long enqueueNanos) {
+            this.task = task;
+            this.enqueueNanos = enqueueNanos;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+    }
+
+    /**
+     * CoDel（Controlled Delay）
+     * <p>
+     * 每个时间窗口结束时，如果窗口内最小的排队时间超过 target，说明队列一直没有排空，处于过载状态；
+     * 过载期间直接丢弃排队时间超过 2 * target 的任务（取出的总是最早入队的任务），而不是按 CoDel 原文逐渐缩短丢弃间隔。
+     * 参考 facebook wangle 的 Codel 实现。
+     * <p>
+     * 每次取出任务都会调用，状态用原子变量维护不加锁：只有排队时间更小时才 CAS 更新 minDelay，窗口结束时由 CAS 成功的线程切换窗口。
+     * 队列排空时 minDelay 记为 0 并重新开始窗口，空闲之后不会沿用空闲之前的过载状态。
+     */
+    private static final class Codel {
+
+        private final long targetNanos;
+
+        private final long intervalNanos;
+
+        private final AtomicLong intervalEnd;
+
+        /**
+         * 当前窗口内最小的排队时间
+         */
+        private final AtomicLong minDelay = new AtomicLong();
+
+        private volatile boolean overloaded;
+
+        private Codel(long targetNanos, long intervalNanos) {
+            this.targetNanos = targetNanos;
+            this.intervalNanos = Math.max(intervalNanos, 1);
+            this.intervalEnd = new AtomicLong(System.nanoTime() + this.intervalNanos);
+        }
+
+        boolean shouldDrop(long delay) {
+            long now = System.nanoTime();
+            long end = intervalEnd.get();
+            if (now - end > 0 && intervalEnd.compareAndSet(end, now + intervalNanos)) {
+                // 新的时间窗口，第一个任务不丢弃
+                overloaded = minDelay.getAndSet(delay) > targetNanos;
+                return false;
+            }
+            long min = minDelay.get();
+            while (delay < min && !minDelay.compareAndSet(min, delay)) {
+                min = minDelay.get();
+            }
+            return overloaded && delay > 2 * targetNanos;
+        }
+
+        /**
+         * 队列排空，只在取不到任务时调用
+         */
+        void reset() {
+            if (minDelay.get() != 0) {
+                minDelay.set(0);
+            }
+            if (overloaded) {
+                overloaded = false;
+            }
+            intervalEnd.set(System.nanoTime() + intervalNanos);
+        }
+
+    }
+
 }
@@ -5,6 +5,8 @@ import org.apache.commons.lang3.Validate;
 
 import java.util.concurrent.*;
 import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * ThreadPool创建的工具类.
@@ -53,6 +55,13 @@ public class ThreadPoolBuilder {
         return new QueuableCachedThreadPoolBuilder();
     }
 
+    /**
+     * @see VirtualThreadPoolBuilder
+     */
+    public static VirtualThreadPoolBuilder virtualPool() {
+        return new VirtualThreadPoolBuilder();
+    }
+
     /**
      * 创建FixedThreadPool.建议必须设置queueSize保证有界。
      * <p>
@@ -294,6 +303,11 @@ public class ThreadPoolBuilder {
 
         private RejectedExecutionHandler rejectHandler;
 
+        private LongConsumer queueTimeListener;
+        private long targetDelayMillis = 0;
+        private long intervalMillis = 100;
+        private Consumer<Runnable> expiredHandler;
+
         public QueuableCachedThreadPoolBuilder setMinSize(int minSize) {
             this.minSize = minSize;
             return this;
@@ -348,6 +362,38 @@ public class ThreadPoolBuilder {
             return this;
         }
 
+        /**
+         * 任务开始执行时回调排队时间（纳秒），在执行任务的线程中调用，默认不回调
+         */
+        public QueuableCachedThreadPoolBuilder setQueueTimeListener(LongConsumer queueTimeListener) {
+            this.queueTimeListener = queueTimeListener;
+            return this;
+        }
+
+        /**
+         * CoDel 目标排队时间（毫秒），一个时间窗口内的最小排队时间都超过该值时，丢弃排队时间超过 2 倍该值的任务，默认 0 不丢弃
+         */
+        public QueuableCachedThreadPoolBuilder setTargetDelayMillis(long targetDelayMillis) {
+            this.targetDelayMillis = targetDelayMillis;
+            return this;
+        }
+
+        /**
+         * CoDel 判断是否过载的时间窗口（毫秒），默认 100
+         */
+        public QueuableCachedThreadPoolBuilder setIntervalMillis(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+            return this;
+        }
+
+        /**
+         * 丢弃任务的回调，参数为提交的任务，默认取消 Future 类型的任务
+         */
+        public QueuableCachedThreadPoolBuilder setExpiredHandler(Consumer<Runnable> expiredHandler) {
+            this.expiredHandler = expiredHandler;
+            return this;
+        }
+
         public QueuableCachedThreadPool build() {
             threadFactory = createThreadFactory(threadFactory, threadNamePrefix, daemon);
             if (rejectHandler == null) {
@@ -356,7 +402,47 @@ public class ThreadPoolBuilder {
             return new QueuableCachedThreadPool(minSize, maxSize,
                     keepAliveSecs, TimeUnit.SECONDS,
                     new ControllableQueue(queueSize),
-                    threadFactory, rejectHandler);
+                    threadFactory, rejectHandler,
+                    queueTimeListener, targetDelayMillis, intervalMillis, expiredHandler);
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程的ThreadPool，需要 jdk 21 及以上
+     *
+     * @see VirtualThreadPool
+     */
+    public static class VirtualThreadPoolBuilder {
+
+        private int maxConcurrency = 10000;
+        private int queueSize = 100;
+        private String threadNamePrefix;
+
+        /**
+         * 同时执行的最大任务数, 默认10000
+         */
+        public VirtualThreadPoolBuilder setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * 等待执行的最大任务数, 默认100
+         */
+        public VirtualThreadPoolBuilder setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        public VirtualThreadPoolBuilder setThreadNamePrefix(String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+            return this;
+        }
+
+        public VirtualThreadPool build() {
+            Validate.isTrue(maxConcurrency > 0);
+            Validate.isTrue(queueSize >= 0);
+            return new VirtualThreadPool(threadNamePrefix, maxConcurrency, queueSize);
         }
     }
 
@@ -0,0 +1,166 @@
+package com.luastar.swift.base.thread;
+
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个任务一个虚拟线程的线程池（需要 jdk 21 及以上），通过反射创建，java 8 下可以编译和加载
+ * <p>
+ * 1. 同时执行的任务数不超过 maxConcurrency，超过的任务在虚拟线程中等待许可.
+ * <p>
+ * 2. 等待的任务数超过 queueSize 时抛出 RejectedExecutionException.
+ * <p>
+ * 3. 提交任务时的 MDC 传递到虚拟线程中.
+ */
+public class VirtualThreadPool extends AbstractExecutorService {
+
+    private final ExecutorService executor;
+
+    private final int maxConcurrency;
+
+    private final int queueSize;
+
+    /**
+     * 执行许可
+     */
+    private final Semaphore running;
+
+    /**
+     * 提交许可（执行 + 等待）
+     */
+    private final Semaphore admission;
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong completedTaskCount = new AtomicLong();
+
+    public VirtualThreadPool(String threadNamePrefix, int maxConcurrency, int queueSize) {
+        if (maxConcurrency <= 0 || queueSize < 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive and queueSize must not be negative");
+        }
+        this.executor = newThreadPerTaskExecutor(threadNamePrefix);
+        this.maxConcurrency = maxConcurrency;
+        this.queueSize = queueSize;
+        this.running = new Semaphore(maxConcurrency);
+        this.admission = new Semaphore(maxConcurrency + queueSize);
+    }
+
+    /**
+     * 当前 jdk 是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())
+     */
+    private static ExecutorService newThreadPerTaskExecutor(String threadNamePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            if (threadNamePrefix != null) {
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix + "-", 0L);
+            }
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("virtual threads are not supported by this jdk : " + System.getProperty("java.version"), e);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (!admission.tryAcquire()) {
+            throw new RejectedExecutionException("Virtual thread pool is full.");
+        }
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+        try {
+            executor.execute(() -> {
+                try {
+                    running.acquire();
+                } catch (InterruptedException e) {
+                    admission.release();
+                    return;
+                }
+                activeCount.incrementAndGet();
+                if (mdcContext != null) {
+                    MDC.setContextMap(mdcContext);
+                }
+                try {
+                    command.run();
+                } finally {
+                    MDC.clear();
+                    activeCount.decrementAndGet();
+                    completedTaskCount.incrementAndGet();
+                    running.release();
+                    admission.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 正在执行的任务数
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * 等待执行许可的任务数
+     */
+    public int getQueueSize() {
+        return Math.max(0, maxConcurrency + queueSize - admission.availablePermits() - activeCount.get());
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+}
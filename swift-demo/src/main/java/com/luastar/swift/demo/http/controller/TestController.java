@@ -6,6 +6,7 @@ import com.luastar.swift.base.utils.ClassLoaderUtils;
 import com.luastar.swift.demo.http.entity.Book;
 import com.luastar.swift.demo.http.entity.User;
 import com.luastar.swift.http.route.RequestMethod;
+import com.luastar.swift.http.server.HttpChunkedWriter;
 import com.luastar.swift.http.server.HttpRequest;
 import com.luastar.swift.http.server.HttpResponse;
 import com.luastar.swift.http.server.HttpService;
@@ -29,6 +30,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @HttpService("/test")
 public class TestController {
@@ -102,7 +104,7 @@ public class TestController {
         response.setResult("TestCtrl[getpost] OK !");
     }
 
-    @HttpService(value = "/get_or_post", method = {RequestMethod.GET, RequestMethod.POST})
+    @HttpService(value = "/get_or_post", method = {RequestMethod.GET, RequestMethod.POST}, timeout = 30)
     public void getOrPost(HttpRequest request, HttpResponse response) throws InterruptedException {
         logger.info("----------come into TestCtrl[get_or_post]");
         // response
@@ -111,6 +113,16 @@ public class TestController {
         response.setResult("TestCtrl[get_or_post] OK !");
     }
 
+    @HttpService("/async")
+    public CompletableFuture<Void> async(HttpRequest request, HttpResponse response) {
+        logger.info("----------come into TestCtrl[async]");
+        // 业务线程立即返回，完成后再输出结果
+        return CompletableFuture.runAsync(() -> {
+            response.setResponseContentTypePlain();
+            response.setResult("TestCtrl[async] OK !");
+        });
+    }
+
     @HttpService("/upload")
     public void upload(HttpRequest request, HttpResponse response) {
         logger.info("----------come into TestCtrl[upload]");
@@ -128,6 +140,26 @@ public class TestController {
         response.setResult("TestCtrl[upload] OK !");
     }
 
+    /**
+     * 流式接收请求体，上传文件直接写入磁盘，不在内存中聚合
+     *
+     * @param request
+     * @param response
+     */
+    @HttpService(value = "/upload/stream", streaming = true)
+    public void uploadStream(HttpRequest request, HttpResponse response) {
+        logger.info("----------come into TestCtrl[uploadStream]");
+        for (Map.Entry<String, FileUpload> file : request.getFileMap().entrySet()) {
+            logger.info("request file : {}={}, size={}, inMemory={}", file.getKey(), file.getValue().getFilename(), file.getValue().length(), file.getValue().isInMemory());
+        }
+        if (request.getBodyFile() != null) {
+            logger.info("request body file : {}, size={}", request.getBodyFile().getAbsolutePath(), request.getBodyFile().length());
+        }
+        // response
+        response.setResponseContentTypePlain();
+        response.setResult("TestCtrl[uploadStream] OK !");
+    }
+
     @HttpService("/download")
     public void download(HttpRequest request, HttpResponse response) {
         try {
@@ -146,6 +178,20 @@ public class TestController {
         }
     }
 
+    @HttpService("/download/chunked")
+    public void downloadChunked(HttpRequest request, HttpResponse response) {
+        response.setResponseContentTypeStream("aaa.csv");
+        HttpChunkedWriter writer = response.getChunkedWriter();
+        try {
+            writer.write("id,name\n");
+            for (int i = 0; i < 100000; i++) {
+                writer.write(i + ",name" + i + "\n");
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
     @HttpService("/compression")
     public void compression(HttpRequest request, HttpResponse response) {
         try {
@@ -184,9 +230,8 @@ public class TestController {
     public void validateJson(HttpRequest request, HttpResponse response) {
         Book book = request.getBodyObject(Book.class);
         logger.info(book.toString());
-        // response
-        response.setResponseContentTypePlain();
-        response.setResult(book.toString());
+        // response，直接序列化到池化 ByteBuf
+        response.setResultJson(book);
     }
 
     /**
@@ -122,6 +122,10 @@ public interface HttpConstant {
      * 任务执行超时时间（秒），默认值 86400（24小时）
      */
     int SWIFT_EXECUTE_TIMEOUT = PropertyUtils.getInt("swift.executeTimeout", 86400);
+    /**
+     * inline 方法执行时间警告阈值（毫秒），默认 100
+     */
+    long SWIFT_INLINE_BLOCKING_THRESHOLD = PropertyUtils.getLong("swift.inlineBlockingThreshold", 100);
     /**
      * 请求行最大长度
      */
@@ -138,10 +142,44 @@ public interface HttpConstant {
      * 请求体最大值
      */
     int SWIFT_MAX_CONTENT_LENGTH = PropertyUtils.getInt("swift.maxContentLength", 1024 * 1024 * 10);
+    /**
+     * 流式接收的请求体最大值，默认值 1GB（为0表示不限制）
+     */
+    long SWIFT_MAX_STREAMING_CONTENT_LENGTH = PropertyUtils.getLong("swift.maxStreamingContentLength", 1024L * 1024 * 1024);
+    /**
+     * 流式接收时写入磁盘的线程数，默认值 cpu 个数，只在有 @HttpService(streaming = true) 方法时创建
+     */
+    int SWIFT_STREAMING_IO_THREADS = PropertyUtils.getInt("swift.streaming.ioThreads", NettyRuntime.availableProcessors());
     /**
      * 输出日志最大值
      */
     int SWIFT_MAX_LOG_LENGTH = PropertyUtils.getInt("swift.maxLogLength", 1024 * 16);
+    /**
+     * 是否统计请求耗时指标（/swift/metrics），默认 true
+     */
+    boolean SWIFT_METRICS_ENABLED = Boolean.parseBoolean(PropertyUtils.getString("swift.metrics.enabled", "true"));
+    /**
+     * 允许访问 /swift/metrics 和 /swift/interceptors 的客户端 ip（连接地址，不取 X-Forwarded-For），逗号分隔，
+     * * 表示不限制，为空表示都不允许，默认只允许本机
+     */
+    String SWIFT_ADMIN_ALLOW_IPS = PropertyUtils.getString("swift.admin.allowIps", "127.0.0.1,0:0:0:0:0:0:0:1");
+    /**
+     * 是否异步输出访问日志，默认 true（false 时在业务线程中同步输出）；
+     * 异步时业务线程的 MDC 只包含请求 ip、地址和方法，不包含请求头和请求体
+     */
+    boolean SWIFT_ACCESS_LOG_ASYNC = Boolean.parseBoolean(PropertyUtils.getString("swift.accessLog.async", "true"));
+    /**
+     * 异步访问日志缓冲区大小（取 2 的幂），满时丢弃，默认 4096
+     */
+    int SWIFT_ACCESS_LOG_BUFFER_SIZE = PropertyUtils.getInt("swift.accessLog.bufferSize", 4096);
+    /**
+     * 访问日志采样比例，0 ~ 1，默认 1（全部记录）
+     */
+    double SWIFT_ACCESS_LOG_SAMPLE_RATE = PropertyUtils.getDouble("swift.accessLog.sampleRate", 1.0);
+    /**
+     * 访问日志中请求体和返回内容的最大字节数，默认 swift.maxLogLength
+     */
+    int SWIFT_ACCESS_LOG_MAX_BODY_LENGTH = PropertyUtils.getInt("swift.accessLog.maxBodyLength", SWIFT_MAX_LOG_LENGTH);
     /**
      * 分发线程数，默认值 1（为0表示cpu个数 * 2）
      */
@@ -154,9 +192,166 @@ public interface HttpConstant {
      * 业务线程数，默认值 max(32, cpu * 2)
      */
     int SWIFT_BUSINESS_THREADS = PropertyUtils.getInt("swift.businessThreads", Math.max(64, NettyRuntime.availableProcessors() * 2));
+    /**
+     * 业务线程池类型，pool/virtual，默认 pool（virtual 需要 jdk 21 及以上，不支持时使用 pool）
+     */
+    String SWIFT_EXECUTOR = PropertyUtils.getString("swift.executor", "pool");
+    /**
+     * 虚拟线程最大并发数，默认 10000
+     */
+    int SWIFT_VIRTUAL_MAX_CONCURRENCY = PropertyUtils.getInt("swift.virtualMaxConcurrency", 10000);
+    /**
+     * 分组线程池默认最大并发数，默认 16，可以通过 @HttpService(maxConcurrency) 或 swift.group.[分组名].maxConcurrency 设置
+     */
+    int SWIFT_GROUP_MAX_CONCURRENCY = PropertyUtils.getInt("swift.group.maxConcurrency", 16);
+    /**
+     * 分组线程池默认队列大小，默认 256，可以通过 @HttpService(queueSize) 或 swift.group.[分组名].queueSize 设置
+     */
+    int SWIFT_GROUP_QUEUE_SIZE = PropertyUtils.getInt("swift.group.queueSize", 256);
+    /**
+     * 分组线程池队列满时的处理方式，reject/shared，默认 reject 返回 503，shared 交给共享的业务线程池执行
+     */
+    String SWIFT_GROUP_REJECT_POLICY = PropertyUtils.getString("swift.group.rejectPolicy", "reject");
+    /**
+     * 业务线程池目标排队时间（毫秒），默认 0 不限制
+     * 一个时间窗口内的最小排队时间都超过该值时认为过载（CoDel），过载期间排队超过 2 倍该值的请求直接返回 503，不再执行
+     */
+    long SWIFT_QUEUE_TARGET_DELAY = PropertyUtils.getLong("swift.queue.targetDelay", 0);
+    /**
+     * 判断业务线程池是否过载的时间窗口（毫秒），默认 100
+     */
+    long SWIFT_QUEUE_INTERVAL = PropertyUtils.getLong("swift.queue.interval", 100);
     /**
      * 返回结果压缩级别，0~9，默认6
      */
     int SWIFT_COMPRESSION_LEVEL = PropertyUtils.getInt("swift.compressionLevel", 6);
+    /**
+     * 返回结果超过该长度（字节）才压缩，长度未知（分块输出）时压缩，默认 1024
+     */
+    int SWIFT_COMPRESSION_MIN_LENGTH = PropertyUtils.getInt("swift.compression.minLength", 1024);
+    /**
+     * 压缩的返回类型，逗号分隔，按前缀匹配
+     */
+    String SWIFT_COMPRESSION_MIME_TYPES = PropertyUtils.getString("swift.compression.mimeTypes",
+            "text/,application/json,application/javascript,application/x-javascript,application/xml,image/svg+xml");
+    /**
+     * 输出文件时如果存在同名 .gz 文件并且客户端支持 gzip，直接输出 .gz 文件，默认 false
+     */
+    boolean SWIFT_COMPRESSION_PRECOMPRESSED = Boolean.parseBoolean(PropertyUtils.getString("swift.compression.precompressed", "false"));
+    /**
+     * 连接写缓冲低水位，默认 32KB
+     */
+    int SWIFT_WRITE_BUFFER_LOW_WATER_MARK = PropertyUtils.getInt("swift.writeBufferLowWaterMark", 32 * 1024);
+    /**
+     * 连接写缓冲高水位，超过后连接不可写，分块输出会等待，默认 64KB
+     */
+    int SWIFT_WRITE_BUFFER_HIGH_WATER_MARK = PropertyUtils.getInt("swift.writeBufferHighWaterMark", 64 * 1024);
+    /**
+     * 传输层，auto/epoll/nio，默认 auto（epoll 可用时使用 epoll，否则使用 nio）
+     */
+    String SWIFT_TRANSPORT = PropertyUtils.getString("swift.transport", "auto");
+    /**
+     * TCP_FASTOPEN 队列长度，仅 epoll 有效，默认 0（不开启）
+     */
+    int SWIFT_TCP_FASTOPEN = PropertyUtils.getInt("swift.tcpFastOpen", 0);
+    /**
+     * 同一端口绑定的次数，大于 1 时开启 SO_REUSEPORT 并绑定多次，由内核在多个监听 socket 间分配连接，仅 epoll 有效，默认 1
+     */
+    int SWIFT_REUSE_PORT_BINDS = PropertyUtils.getInt("swift.reusePortBinds", 1);
+    /**
+     * 是否开启 http2，ssl 时通过 ALPN 协商，非 ssl 时支持 h2c，默认 false
+     */
+    boolean SWIFT_HTTP2 = Boolean.parseBoolean(PropertyUtils.getString("swift.http2", "false"));
+    /**
+     * http2 每个连接同时处理的最大 stream 数，默认 100
+     */
+    long SWIFT_HTTP2_MAX_CONCURRENT_STREAMS = PropertyUtils.getLong("swift.http2.maxConcurrentStreams", 100);
+    /**
+     * http1.1 管道化请求每个连接最多同时处理的请求数，达到后暂停读取，小于等于 0 表示不限制，默认 16
+     */
+    int SWIFT_PIPELINE_MAX_DEPTH = PropertyUtils.getInt("swift.pipelineMaxDepth", 16);
+    /**
+     * 连接读空闲时间（秒），没有处理中的请求时关闭，0 表示不检查，默认 0
+     */
+    int SWIFT_CONNECTION_READER_IDLE_TIME = PropertyUtils.getInt("swift.connection.readerIdleTime", 0);
+    /**
+     * 连接写空闲时间（秒），没有处理中的请求时关闭，0 表示不检查，默认 0
+     */
+    int SWIFT_CONNECTION_WRITER_IDLE_TIME = PropertyUtils.getInt("swift.connection.writerIdleTime", 0);
+    /**
+     * 连接读写空闲时间（秒），没有处理中的请求时关闭，0 表示不检查，默认 0；
+     * 需要主动回收空闲连接时设置，如 swift.connection.allIdleTime=60，应大于客户端连接池的保持时间
+     */
+    int SWIFT_CONNECTION_ALL_IDLE_TIME = PropertyUtils.getInt("swift.connection.allIdleTime", 0);
+    /**
+     * 最大连接数，0 表示不限制，默认 0
+     */
+    int SWIFT_CONNECTION_MAX = PropertyUtils.getInt("swift.connection.max", 0);
+    /**
+     * 单个 ip 最大连接数，0 表示不限制，默认 0
+     */
+    int SWIFT_CONNECTION_MAX_PER_IP = PropertyUtils.getInt("swift.connection.maxPerIp", 0);
+    /**
+     * 开始读取请求后接收完请求头的时间（秒），0 表示不限制，默认 0；
+     * 需要防御慢速请求头时设置，如 swift.connection.headerTimeout=30
+     */
+    int SWIFT_CONNECTION_HEADER_TIMEOUT = PropertyUtils.getInt("swift.connection.headerTimeout", 0);
+    /**
+     * 收到请求头后接收完请求体的时间（秒），0 表示不限制，默认 0；
+     * 需要防御慢速请求体时设置，如 swift.connection.bodyTimeout=300，应足够上传最大的请求体
+     */
+    int SWIFT_CONNECTION_BODY_TIMEOUT = PropertyUtils.getInt("swift.connection.bodyTimeout", 0);
+    /**
+     * 每个连接最多处理的请求数，达到后返回 Connection: close 并关闭连接，0 表示不限制，默认 0
+     */
+    int SWIFT_CONNECTION_MAX_REQUESTS = PropertyUtils.getInt("swift.connection.maxRequests", 0);
+    /**
+     * 是否开启自适应并发限制，默认 false
+     */
+    boolean SWIFT_LIMIT_ENABLED = Boolean.parseBoolean(PropertyUtils.getString("swift.limit.enabled", "false"));
+    /**
+     * 并发限制初始值
+     */
+    int SWIFT_LIMIT_INITIAL = PropertyUtils.getInt("swift.limit.initial", 100);
+    /**
+     * 并发限制最小值
+     */
+    int SWIFT_LIMIT_MIN = PropertyUtils.getInt("swift.limit.min", 10);
+    /**
+     * 并发限制最大值
+     */
+    int SWIFT_LIMIT_MAX = PropertyUtils.getInt("swift.limit.max", 1000);
+    /**
+     * 请求耗时阈值（毫秒），超过后减小并发限制
+     */
+    long SWIFT_LIMIT_LATENCY = PropertyUtils.getLong("swift.limit.latency", 1000);
+    /**
+     * 并发限制减小比例
+     */
+    double SWIFT_LIMIT_BACKOFF_RATIO = PropertyUtils.getDouble("swift.limit.backoffRatio", 0.9);
+    /**
+     * 超过并发限制时返回的 Retry-After（秒）
+     */
+    int SWIFT_LIMIT_RETRY_AFTER = PropertyUtils.getInt("swift.limit.retryAfter", 1);
+    /**
+     * ssl 证书文件（PEM），为空时使用自签名证书
+     */
+    String SWIFT_SSL_CERT_FILE = PropertyUtils.getString("swift.ssl.certFile", "");
+    /**
+     * ssl 私钥文件（PKCS#8 PEM）
+     */
+    String SWIFT_SSL_KEY_FILE = PropertyUtils.getString("swift.ssl.keyFile", "");
+    /**
+     * ssl 私钥密码，为空表示没有密码
+     */
+    String SWIFT_SSL_KEY_PASSWORD = PropertyUtils.getString("swift.ssl.keyPassword", "");
+    /**
+     * ssl session 缓存大小，默认 20480
+     */
+    long SWIFT_SSL_SESSION_CACHE_SIZE = PropertyUtils.getLong("swift.ssl.sessionCacheSize", 20480);
+    /**
+     * ssl session 超时时间（秒），默认 300
+     */
+    long SWIFT_SSL_SESSION_TIMEOUT = PropertyUtils.getLong("swift.ssl.sessionTimeout", 300);
 
 }
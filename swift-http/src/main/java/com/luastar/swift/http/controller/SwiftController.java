@@ -1,20 +1,71 @@
 package com.luastar.swift.http.controller;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.luastar.swift.base.utils.SpringUtils;
+import com.luastar.swift.http.constant.HttpConstant;
+import com.luastar.swift.http.route.HttpHandlerMapping;
+import com.luastar.swift.http.server.HttpMetrics;
 import com.luastar.swift.http.server.HttpRequest;
 import com.luastar.swift.http.server.HttpResponse;
 import com.luastar.swift.http.server.HttpService;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
+
 @HttpService("/swift")
 public class SwiftController {
 
     private static final Logger logger = LoggerFactory.getLogger(SwiftController.class);
 
-    @HttpService("/alive")
+    /**
+     * 允许访问管理接口的客户端 ip
+     */
+    private static final Set<String> ADMIN_ALLOW_IPS = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(HttpConstant.SWIFT_ADMIN_ALLOW_IPS));
+
+    @HttpService(value = "/alive", inline = true)
     public void index(HttpRequest request, HttpResponse response) {
         response.setResponseContentTypePlain();
         response.setResult("OK");
     }
 
+    /**
+     * prometheus 格式的指标
+     */
+    @HttpService("/metrics")
+    public void metrics(HttpRequest request, HttpResponse response) {
+        if (!checkAdmin(request, response)) {
+            return;
+        }
+        response.setHeader(HttpHeaderNames.CONTENT_TYPE, "text/plain; version=0.0.4; charset=utf-8");
+        response.setResult(HttpMetrics.toPrometheus());
+    }
+
+    /**
+     * 查看每个地址匹配的拦截器
+     */
+    @HttpService("/interceptors")
+    public void interceptors(HttpRequest request, HttpResponse response) {
+        if (!checkAdmin(request, response)) {
+            return;
+        }
+        HttpHandlerMapping handlerMapping = SpringUtils.getApplicationContext().getBean(HttpHandlerMapping.class);
+        response.setResultJson(handlerMapping.getInterceptorView());
+    }
+
+    /**
+     * 管理接口只允许 swift.admin.allowIps 中的连接地址访问，其他返回 403
+     */
+    private boolean checkAdmin(HttpRequest request, HttpResponse response) {
+        if (ADMIN_ALLOW_IPS.contains("*") || ADMIN_ALLOW_IPS.contains(request.getSocketIp())) {
+            return true;
+        }
+        logger.warn("不允许访问管理接口 : {}, socketIp : {}", request.getUri(), request.getSocketIp());
+        response.setStatus(HttpResponseStatus.FORBIDDEN);
+        return false;
+    }
+
 }
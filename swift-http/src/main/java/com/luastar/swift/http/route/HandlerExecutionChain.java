@@ -21,6 +21,8 @@ public class HandlerExecutionChain {
 
     private List<HandlerInterceptor> interceptorList;
 
+    private boolean ownInterceptorList = false;
+
     /**
      * Create a new HandlerExecutionChain.
      *
@@ -63,10 +65,16 @@ public class HandlerExecutionChain {
         }
     }
 
+    /**
+     * 传入的列表可能是共享的不可修改列表，修改前复制
+     */
     private void initInterceptorList() {
         if (this.interceptorList == null) {
             this.interceptorList = new ArrayList<HandlerInterceptor>();
+        } else if (!this.ownInterceptorList) {
+            this.interceptorList = new ArrayList<HandlerInterceptor>(this.interceptorList);
         }
+        this.ownInterceptorList = true;
     }
 
     /**
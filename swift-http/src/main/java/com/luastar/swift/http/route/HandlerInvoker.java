@@ -0,0 +1,23 @@
+package com.luastar.swift.http.route;
+
+import com.luastar.swift.http.server.HttpRequest;
+import com.luastar.swift.http.server.HttpResponse;
+
+/**
+ * 处理方法调用，注册时通过 LambdaMetafactory 生成直接调用，不再每次反射
+ * <p>
+ * 方法抛出的异常直接抛出，不包装成 InvocationTargetException
+ */
+@FunctionalInterface
+public interface HandlerInvoker {
+
+    /**
+     * @param bean
+     * @param request
+     * @param response
+     * @return 方法返回值，void 方法返回 null
+     * @throws Exception
+     */
+    Object invoke(Object bean, HttpRequest request, HttpResponse response) throws Exception;
+
+}
@@ -0,0 +1,101 @@
+package com.luastar.swift.http.route;
+
+import com.luastar.swift.http.server.HttpRequest;
+import com.luastar.swift.http.server.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 生成 {@link HandlerInvoker}
+ * <p>
+ * public 类的 public 方法通过 LambdaMetafactory 生成直接调用，其他情况（非 public、参数类型不匹配、
+ * 类加载器不可见等）使用反射调用，反射调用同样解开 InvocationTargetException
+ */
+final class HandlerInvokerFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(HandlerInvokerFactory.class);
+
+    private static final MethodType INVOKE_TYPE = MethodType.methodType(Object.class, Object.class, HttpRequest.class, HttpResponse.class);
+
+    private static final MethodType VOID_INVOKE_TYPE = MethodType.methodType(void.class, Object.class, HttpRequest.class, HttpResponse.class);
+
+    private HandlerInvokerFactory() {
+    }
+
+    static HandlerInvoker create(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (Modifier.isPublic(method.getModifiers())
+                && Modifier.isPublic(declaringClass.getModifiers())
+                && ClassUtils.isVisible(declaringClass, HandlerInvokerFactory.class.getClassLoader())) {
+            try {
+                return compile(method);
+            } catch (Throwable e) {
+                logger.warn("生成方法调用失败，使用反射调用 : {}, {}", method, e.toString());
+            }
+        }
+        return reflect(method);
+    }
+
+    /**
+     * void 方法
+     */
+    @FunctionalInterface
+    interface VoidInvoker {
+
+        void invoke(Object bean, HttpRequest request, HttpResponse response) throws Exception;
+
+    }
+
+    private static HandlerInvoker compile(Method method) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle target = lookup.unreflect(method);
+        // (Bean, HttpRequest, HttpResponse)R
+        MethodType instantiatedType = target.type();
+        if (method.getReturnType() == void.class) {
+            CallSite callSite = LambdaMetafactory.metafactory(lookup,
+                    "invoke",
+                    MethodType.methodType(VoidInvoker.class),
+                    VOID_INVOKE_TYPE,
+                    target,
+                    instantiatedType);
+            VoidInvoker invoker = (VoidInvoker) callSite.getTarget().invokeExact();
+            return (bean, request, response) -> {
+                invoker.invoke(bean, request, response);
+                return null;
+            };
+        }
+        CallSite callSite = LambdaMetafactory.metafactory(lookup,
+                "invoke",
+                MethodType.methodType(HandlerInvoker.class),
+                INVOKE_TYPE,
+                target,
+                instantiatedType);
+        return (HandlerInvoker) callSite.getTarget().invokeExact();
+    }
+
+    private static HandlerInvoker reflect(Method method) {
+        ReflectionUtils.makeAccessible(method);
+        return (bean, request, response) -> {
+            try {
+                return method.invoke(bean, request, response);
+            } catch (InvocationTargetException e) {
+                Throwable target = e.getTargetException();
+                if (target instanceof Exception) {
+                    throw (Exception) target;
+                }
+                if (target instanceof Error) {
+                    throw (Error) target;
+                }
+                throw e;
+            }
+        };
+    }
+
+}
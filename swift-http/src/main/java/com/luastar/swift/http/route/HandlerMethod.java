@@ -1,5 +1,8 @@
 package com.luastar.swift.http.route;
 
+import com.luastar.swift.http.server.HttpRequest;
+import com.luastar.swift.http.server.HttpResponse;
+import com.luastar.swift.http.server.HttpService;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.core.BridgeMethodResolver;
 import org.springframework.core.MethodParameter;
@@ -9,6 +12,7 @@ import org.springframework.util.ClassUtils;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletionStage;
 
 public class HandlerMethod {
 
@@ -22,6 +26,19 @@ public class HandlerMethod {
 
     private final MethodParameter[] parameters;
 
+    private final HttpService httpService;
+
+    private final HandlerInvoker invoker;
+
+    /**
+     * 类上的注解
+     */
+    private final HttpService typeHttpService;
+
+    /**
+     * 业务线程池分组，为空表示使用共享的业务线程池
+     */
+    private final String executorGroup;
 
     /**
      * Create an instance from a bean instance and a method.
@@ -34,6 +51,10 @@ public class HandlerMethod {
         this.method = method;
         this.bridgedMethod = BridgeMethodResolver.findBridgedMethod(method);
         this.parameters = initMethodParameters();
+        this.httpService = AnnotationUtils.findAnnotation(this.method, HttpService.class);
+        this.invoker = HandlerInvokerFactory.create(this.method);
+        this.typeHttpService = AnnotationUtils.findAnnotation(ClassUtils.getUserClass(this.method.getDeclaringClass()), HttpService.class);
+        this.executorGroup = initExecutorGroup();
     }
 
     /**
@@ -49,6 +70,10 @@ public class HandlerMethod {
         this.method = bean.getClass().getMethod(methodName, parameterTypes);
         this.bridgedMethod = BridgeMethodResolver.findBridgedMethod(this.method);
         this.parameters = initMethodParameters();
+        this.httpService = AnnotationUtils.findAnnotation(this.method, HttpService.class);
+        this.invoker = HandlerInvokerFactory.create(this.method);
+        this.typeHttpService = AnnotationUtils.findAnnotation(ClassUtils.getUserClass(this.method.getDeclaringClass()), HttpService.class);
+        this.executorGroup = initExecutorGroup();
     }
 
     /**
@@ -66,6 +91,10 @@ public class HandlerMethod {
         this.method = method;
         this.bridgedMethod = BridgeMethodResolver.findBridgedMethod(method);
         this.parameters = initMethodParameters();
+        this.httpService = AnnotationUtils.findAnnotation(this.method, HttpService.class);
+        this.invoker = HandlerInvokerFactory.create(this.method);
+        this.typeHttpService = AnnotationUtils.findAnnotation(ClassUtils.getUserClass(this.method.getDeclaringClass()), HttpService.class);
+        this.executorGroup = initExecutorGroup();
     }
 
     /**
@@ -78,6 +107,10 @@ public class HandlerMethod {
         this.method = handlerMethod.method;
         this.bridgedMethod = handlerMethod.bridgedMethod;
         this.parameters = handlerMethod.parameters;
+        this.httpService = handlerMethod.httpService;
+        this.invoker = handlerMethod.invoker;
+        this.typeHttpService = handlerMethod.typeHttpService;
+        this.executorGroup = handlerMethod.executorGroup;
     }
 
     /**
@@ -91,9 +124,30 @@ public class HandlerMethod {
         this.method = handlerMethod.method;
         this.bridgedMethod = handlerMethod.bridgedMethod;
         this.parameters = handlerMethod.parameters;
+        this.httpService = handlerMethod.httpService;
+        this.invoker = handlerMethod.invoker;
+        this.typeHttpService = handlerMethod.typeHttpService;
+        this.executorGroup = handlerMethod.executorGroup;
     }
 
 
+    private String initExecutorGroup() {
+        if (this.httpService != null && !this.httpService.group().isEmpty()) {
+            return this.httpService.group();
+        }
+        if (this.typeHttpService != null && !this.typeHttpService.group().isEmpty()) {
+            return this.typeHttpService.group();
+        }
+        String className = ClassUtils.getUserClass(this.method.getDeclaringClass()).getSimpleName();
+        if (this.httpService != null && this.httpService.maxConcurrency() > 0) {
+            return className + "." + this.method.getName();
+        }
+        if (this.typeHttpService != null && this.typeHttpService.maxConcurrency() > 0) {
+            return className;
+        }
+        return null;
+    }
+
     private MethodParameter[] initMethodParameters() {
         int count = this.bridgedMethod.getParameterTypes().length;
         MethodParameter[] result = new MethodParameter[count];
@@ -162,6 +216,87 @@ public class HandlerMethod {
         return Void.TYPE.equals(getReturnType().getParameterType());
     }
 
+    /**
+     * Returns the {@link HttpService} annotation of the underlying method, may be {@code null}.
+     */
+    public HttpService getHttpService() {
+        return this.httpService;
+    }
+
+    /**
+     * 调用处理方法，方法抛出的异常直接抛出
+     *
+     * @param request
+     * @param response
+     * @return 方法返回值，void 方法返回 null
+     * @throws Exception
+     */
+    public Object invoke(HttpRequest request, HttpResponse response) throws Exception {
+        return this.invoker.invoke(this.bean, request, response);
+    }
+
+    /**
+     * 是否以流式方式接收请求体
+     */
+    public boolean isStreaming() {
+        return this.httpService != null && this.httpService.streaming();
+    }
+
+    /**
+     * 执行超时时间（秒），-1 表示使用全局配置
+     */
+    public int getTimeout() {
+        return this.httpService != null ? this.httpService.timeout() : -1;
+    }
+
+    /**
+     * 业务线程池分组，为空表示使用共享的业务线程池
+     */
+    public String getExecutorGroup() {
+        return this.executorGroup;
+    }
+
+    /**
+     * 分组线程池的最大并发数，-1 表示使用全局配置
+     */
+    public int getMaxConcurrency() {
+        if (this.httpService != null && this.httpService.maxConcurrency() > 0) {
+            return this.httpService.maxConcurrency();
+        }
+        return this.typeHttpService != null && this.typeHttpService.maxConcurrency() > 0 ? this.typeHttpService.maxConcurrency() : -1;
+    }
+
+    /**
+     * 分组线程池的队列大小，-1 表示使用全局配置
+     */
+    public int getQueueSize() {
+        if (this.httpService != null && this.httpService.queueSize() > 0) {
+            return this.httpService.queueSize();
+        }
+        return this.typeHttpService != null && this.typeHttpService.queueSize() > 0 ? this.typeHttpService.queueSize() : -1;
+    }
+
+    /**
+     * 访问日志采样比例，-1 表示使用全局配置
+     */
+    public double getLogSampleRate() {
+        return this.httpService != null ? this.httpService.logSampleRate() : -1;
+    }
+
+    /**
+     * 是否是异步方法，返回 CompletionStage
+     */
+    public boolean isAsync() {
+        return CompletionStage.class.isAssignableFrom(this.method.getReturnType());
+    }
+
+    /**
+     * 是否直接在 worker-group 线程中执行
+     */
+    public boolean isInline() {
+        return this.httpService != null && this.httpService.inline();
+    }
+
     /**
      * Returns a single annotation on the underlying method traversing its super methods if no
      * annotation can be found on the given method itself.
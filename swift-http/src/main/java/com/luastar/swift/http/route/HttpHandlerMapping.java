@@ -5,6 +5,8 @@ import com.luastar.swift.http.constant.HttpConstant;
 import com.luastar.swift.http.server.HttpRequest;
 import com.luastar.swift.http.server.HttpResponse;
 import com.luastar.swift.http.server.HttpService;
+import com.luastar.swift.http.server.HttpThreadPoolExecutor;
+import io.netty.handler.codec.http.QueryStringDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
@@ -39,8 +41,40 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
 
     private final MultiValueMap<String, RequestMappingInfo> urlMap = new LinkedMultiValueMap<>();
 
+    /**
+     * 所有映射按地址分段索引，固定地址没有匹配时用于查找候选
+     */
+    private final RouteTrie routeTrie = new RouteTrie();
+
     private final List<MappedInterceptor> mappedInterceptorList = new ArrayList<>();
 
+    /**
+     * 固定地址的拦截器，启动时计算
+     */
+    private final Map<String, List<HandlerInterceptor>> interceptorMap = new HashMap<>();
+
+    /**
+     * 模式地址的拦截器，启动时按模式计算，不按请求地址缓存
+     */
+    private final Map<String, PatternInterceptors> patternInterceptorMap = new HashMap<>();
+
+    private boolean hasStreamingHandler = false;
+
+    /**
+     * 是否有指定了业务线程池分组的方法
+     */
+    private boolean hasExecutorGroup = false;
+
+    /**
+     * 只映射到 inline 方法的地址
+     */
+    private final Set<String> inlineUrls = new HashSet<>();
+
+    /**
+     * 固定地址对应的业务线程池分组，空字符串表示共享的业务线程池，命中时不需要查找处理方法
+     */
+    private final Map<String, String> urlExecutorGroups = new HashMap<>();
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         this.applicationContext = applicationContext;
@@ -58,6 +92,9 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
     public void afterPropertiesSet() throws Exception {
         initInterceptors();
         initHandlerMethods();
+        initInlineUrls();
+        initUrlExecutorGroups();
+        initInterceptorMap();
     }
 
     /**
@@ -84,6 +121,185 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
         }
     }
 
+    /**
+     * 计算固定地址和模式地址的拦截器
+     */
+    protected void initInterceptorMap() {
+        for (String url : urlMap.keySet()) {
+            interceptorMap.put(url, matchInterceptors(url));
+        }
+        for (RequestMappingInfo mapping : handlerMethods.keySet()) {
+            for (String pattern : mapping.getPatternsCondition().getPatterns()) {
+                if (RouteTrie.isPattern(pattern) && !patternInterceptorMap.containsKey(pattern)) {
+                    patternInterceptorMap.put(pattern, resolvePatternInterceptors(pattern));
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算模式地址的拦截器，能确定匹配结果的拦截器直接决定，不能确定的作为候选在请求时匹配
+     */
+    private PatternInterceptors resolvePatternInterceptors(String routePattern) {
+        List<MappedInterceptor> candidates = new ArrayList<>();
+        boolean resolved = true;
+        for (MappedInterceptor mappedInterceptor : this.mappedInterceptorList) {
+            Boolean matches = matchesRoute(mappedInterceptor, routePattern);
+            if (matches == null) {
+                resolved = false;
+                candidates.add(mappedInterceptor);
+            } else if (matches) {
+                candidates.add(mappedInterceptor);
+            }
+        }
+        if (!resolved) {
+            logger.info("interceptors of pattern {} are matched per request", routePattern);
+        }
+        return new PatternInterceptors(candidates, resolved);
+    }
+
+    /**
+     * 判断拦截器对模式地址能匹配的所有地址是否结果相同，与 {@link MappedInterceptor#matches} 的规则一致
+     *
+     * @return 全部匹配返回 true，全部不匹配返回 false，不能确定返回 null
+     */
+    private Boolean matchesRoute(MappedInterceptor mappedInterceptor, String routePattern) {
+        boolean resolved = true;
+        if (mappedInterceptor.getExcludePatterns() != null) {
+            for (String pattern : mappedInterceptor.getExcludePatterns()) {
+                Boolean matches = matchesRoute(pattern, routePattern);
+                if (matches == null) {
+                    resolved = false;
+                } else if (matches) {
+                    return false;
+                }
+            }
+        }
+        if (!resolved) {
+            return null;
+        }
+        if (mappedInterceptor.getIncludePatterns() == null) {
+            return true;
+        }
+        for (String pattern : mappedInterceptor.getIncludePatterns()) {
+            Boolean matches = matchesRoute(pattern, routePattern);
+            if (matches == null) {
+                resolved = false;
+            } else if (matches) {
+                return true;
+            }
+        }
+        return resolved ? false : null;
+    }
+
+    /**
+     * 判断拦截器的地址模式对模式地址能匹配的所有地址是否结果相同
+     * <p>
+     * 只处理两种能确定的情况：拦截器模式是固定前缀加 /**，且模式地址以该前缀开头时全部匹配；
+     * 两者开头的固定分段不同时全部不匹配。
+     *
+     * @return 全部匹配返回 true，全部不匹配返回 false，不能确定返回 null
+     */
+    private Boolean matchesRoute(String interceptorPattern, String routePattern) {
+        if (interceptorPattern.endsWith("/**")) {
+            String prefix = interceptorPattern.substring(0, interceptorPattern.length() - 3);
+            if (!RouteTrie.isPattern(prefix)
+                    && (prefix.isEmpty() || routePattern.equals(prefix) || routePattern.startsWith(prefix + "/"))) {
+                return true;
+            }
+        }
+        String[] interceptorSegments = StringUtils.tokenizeToStringArray(interceptorPattern, "/", false, true);
+        String[] routeSegments = StringUtils.tokenizeToStringArray(routePattern, "/", false, true);
+        int length = Math.min(interceptorSegments.length, routeSegments.length);
+        for (int i = 0; i < length; i++) {
+            if (RouteTrie.isPattern(interceptorSegments[i]) || RouteTrie.isPattern(routeSegments[i])) {
+                return null;
+            }
+            if (!interceptorSegments[i].equals(routeSegments[i])) {
+                return false;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 找出只会映射到 inline 方法的固定地址，包括能匹配该地址的模式
+     */
+    protected void initInlineUrls() {
+        for (Map.Entry<String, List<RequestMappingInfo>> entry : urlMap.entrySet()) {
+            if (isInlineUrl(entry.getKey(), entry.getValue())) {
+                logger.info("inline url={}", entry.getKey());
+                inlineUrls.add(entry.getKey());
+            }
+        }
+    }
+
+    private boolean isInlineUrl(String url, List<RequestMappingInfo> mappings) {
+        for (RequestMappingInfo mapping : mappings) {
+            if (!handlerMethods.get(mapping).isInline()) {
+                return false;
+            }
+        }
+        for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMethods.entrySet()) {
+            if (entry.getValue().isInline()) {
+                continue;
+            }
+            for (String pattern : entry.getKey().getPatternsCondition().getPatterns()) {
+                if (pathMatcher.isPattern(pattern) && pathMatcher.match(pattern, url)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 找出所有映射（包括能匹配该地址的模式）都使用同一个业务线程池分组的固定地址
+     */
+    protected void initUrlExecutorGroups() {
+        if (!hasExecutorGroup) {
+            return;
+        }
+        for (Map.Entry<String, List<RequestMappingInfo>> entry : urlMap.entrySet()) {
+            String group = getUrlExecutorGroup(entry.getKey(), entry.getValue());
+            if (group != null) {
+                urlExecutorGroups.put(entry.getKey(), group);
+            }
+        }
+    }
+
+    private String getUrlExecutorGroup(String url, List<RequestMappingInfo> mappings) {
+        String group = null;
+        for (RequestMappingInfo mapping : mappings) {
+            String mappingGroup = getExecutorGroup(handlerMethods.get(mapping));
+            if (group != null && !group.equals(mappingGroup)) {
+                return null;
+            }
+            group = mappingGroup;
+        }
+        for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMethods.entrySet()) {
+            if (group.equals(getExecutorGroup(entry.getValue()))) {
+                continue;
+            }
+            for (String pattern : entry.getKey().getPatternsCondition().getPatterns()) {
+                if (RouteTrie.isPattern(pattern) && pathMatcher.match(pattern, url)) {
+                    return null;
+                }
+            }
+        }
+        return group;
+    }
+
+    /**
+     * 处理方法实际使用的业务线程池分组，inline 方法和未指定分组的方法返回空字符串
+     */
+    private static String getExecutorGroup(HandlerMethod handlerMethod) {
+        if (handlerMethod == null || handlerMethod.isInline() || handlerMethod.getExecutorGroup() == null) {
+            return "";
+        }
+        return handlerMethod.getExecutorGroup();
+    }
+
     /**
      * Look for handler methods in a handler.
      *
@@ -209,8 +425,37 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
             throw new IllegalStateException(msg.toString());
         }
         this.handlerMethods.put(mapping, newHandlerMethod);
+        if (newHandlerMethod.isStreaming()) {
+            logger.info("streaming mapping={}", mapping.toString());
+            this.hasStreamingHandler = true;
+        }
+        if (newHandlerMethod.getExecutorGroup() != null) {
+            if (newHandlerMethod.isInline()) {
+                logger.warn("inline 方法在 worker-group 线程中执行，忽略业务线程池分组 : {}", newHandlerMethod);
+            } else {
+                logger.info("executor group={}, mapping={}", newHandlerMethod.getExecutorGroup(), mapping.toString());
+                HttpThreadPoolExecutor.registerGroup(newHandlerMethod.getExecutorGroup(), newHandlerMethod.getMaxConcurrency(), newHandlerMethod.getQueueSize());
+                this.hasExecutorGroup = true;
+            }
+        }
+        if (newHandlerMethod.isInline()) {
+            if (newHandlerMethod.getTimeout() > 0) {
+                // 超时会中断执行线程，inline 方法不能中断 worker-group 线程
+                throw new IllegalStateException("inline 方法不能设置 timeout : " + newHandlerMethod);
+            }
+            if (newHandlerMethod.isStreaming()) {
+                logger.warn("inline 方法在 worker-group 线程中执行，不能读取流式请求体 : {}", newHandlerMethod);
+            }
+            if (newHandlerMethod.getMethod().getExceptionTypes().length > 0) {
+                logger.warn("inline 方法声明了受检异常，可能包含阻塞操作 : {}", newHandlerMethod);
+            }
+        }
         Set<String> patterns = mapping.getPatternsCondition().getPatterns();
+        if (patterns.isEmpty()) {
+            this.routeTrie.add(null, mapping);
+        }
         for (String pattern : patterns) {
+            this.routeTrie.add(pattern, mapping);
             if (!pathMatcher.isPattern(pattern)) {
                 logger.info("url pattern={}, mapping={}", pattern, mapping.toString());
                 this.urlMap.add(pattern, mapping);
@@ -236,6 +481,13 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
         return handlerMethod;
     }
 
+    /**
+     * 所有映射和处理方法，只读
+     */
+    Map<RequestMappingInfo, HandlerMethod> getHandlerMethods() {
+        return Collections.unmodifiableMap(handlerMethods);
+    }
+
     @Override
     public HandlerExecutionChain getHandler(HttpRequest request) throws Exception {
         Object handler = getHandlerInternal(request);
@@ -248,6 +500,118 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
         return getHandlerExecutionChain(handler, request);
     }
 
+    /**
+     * 是否有流式接收请求体的处理方法
+     */
+    public boolean hasStreamingHandler() {
+        return hasStreamingHandler;
+    }
+
+    /**
+     * 判断请求是否映射到流式接收请求体的处理方法，在 worker-group 线程中仅根据请求行判断
+     *
+     * @param request 只包含请求行的请求
+     * @return
+     */
+    public boolean isStreamingRequest(HttpRequest request) {
+        if (!hasStreamingHandler) {
+            return false;
+        }
+        try {
+            HandlerMethod handlerMethod = lookupHandlerMethod(request.getLookupPath(), request);
+            return handlerMethod != null && handlerMethod.isStreaming();
+        } catch (Exception e) {
+            // 路由异常交给业务线程处理
+            return false;
+        }
+    }
+
+    /**
+     * 是否有指定了业务线程池分组的方法，没有时全部使用共享的业务线程池，不需要在 worker-group 线程中查找
+     */
+    public boolean hasExecutorGroup() {
+        return hasExecutorGroup;
+    }
+
+    /**
+     * 固定地址对应的业务线程池分组，在 worker-group 线程中执行
+     *
+     * @param uri 请求地址
+     * @return 分组名，空字符串表示使用共享的业务线程池，为 null 表示需要查找处理方法才能确定
+     */
+    public String getUrlExecutorGroup(String uri) {
+        if (urlExecutorGroups.isEmpty()) {
+            return null;
+        }
+        return urlExecutorGroups.get(getLookupPath(uri));
+    }
+
+    /**
+     * 查找到的处理方法使用的业务线程池分组
+     *
+     * @param mappedHandler
+     * @return 分组名，空字符串表示使用共享的业务线程池
+     */
+    public String getExecutorGroup(HandlerExecutionChain mappedHandler) {
+        if (mappedHandler == null || !(mappedHandler.getHandler() instanceof HandlerMethod)) {
+            return "";
+        }
+        return getExecutorGroup((HandlerMethod) mappedHandler.getHandler());
+    }
+
+    /**
+     * 判断请求是否只会映射到 inline 方法，在 worker-group 线程中执行
+     *
+     * @param uri 请求地址
+     * @return
+     */
+    public boolean isInlineRequest(String uri) {
+        if (inlineUrls.isEmpty()) {
+            return false;
+        }
+        int end = getRawPathEnd(uri);
+        if (end < 0) {
+            return inlineUrls.contains(new QueryStringDecoder(uri).path());
+        }
+        if (end == uri.length()) {
+            return inlineUrls.contains(uri);
+        }
+        // 有查询参数时直接比较 ? 之前的部分，不截取字符串
+        for (String url : inlineUrls) {
+            if (url.length() == end && uri.startsWith(url)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 请求地址中的路径，不需要解码时不创建 QueryStringDecoder，没有查询参数时直接返回原地址
+     */
+    private static String getLookupPath(String uri) {
+        int end = getRawPathEnd(uri);
+        if (end < 0) {
+            return new QueryStringDecoder(uri).path();
+        }
+        return end == uri.length() ? uri : uri.substring(0, end);
+    }
+
+    /**
+     * 路径结束的位置（? 或者地址结尾），路径中有 %、+、# 需要 QueryStringDecoder 处理时返回 -1
+     */
+    private static int getRawPathEnd(String uri) {
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == '?') {
+                return i;
+            }
+            if (c == '%' || c == '+' || c == '#') {
+                return -1;
+            }
+        }
+        return uri.length();
+    }
+
     /**
      * Look up a handler for the given request, returning {@code null} if no
      * specific one is found. This method is called by {@link #getHandler};
@@ -288,8 +652,8 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
             addMatchingMappings(directPathMatches, matches, request);
         }
         if (matches.isEmpty()) {
-            // No choice but to go through all mappings...
-            addMatchingMappings(this.handlerMethods.keySet(), matches, request);
+            // 只检查地址分段可能匹配的映射，不再遍历所有映射
+            addMatchingMappings(this.routeTrie.getCandidates(lookupPath), matches, request);
         }
         if (!matches.isEmpty()) {
             Comparator<Match> comparator = new MatchComparator(getMappingComparator(request));
@@ -396,14 +760,95 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
      * @return the HandlerExecutionChain (never {@code null})
      */
     protected HandlerExecutionChain getHandlerExecutionChain(Object handler, HttpRequest request) {
-        HandlerExecutionChain chain = new HandlerExecutionChain(handler);
-        String lookupPath = request.getLookupPath();
-        for (MappedInterceptor mappedInterceptor : this.mappedInterceptorList) {
-            if (mappedInterceptor.matches(lookupPath, this.pathMatcher)) {
-                chain.addInterceptor(mappedInterceptor.getInterceptor());
+        String bestPattern = (String) request.getAttribute(HttpConstant.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return new HandlerExecutionChain(handler, getInterceptors(request.getLookupPath(), bestPattern));
+    }
+
+    /**
+     * 获取地址对应的拦截器，固定地址和模式地址启动时已经计算，其他情况每次请求匹配
+     *
+     * @param lookupPath
+     * @param bestPattern 匹配到的地址模式，可以为空
+     * @return 不可修改的列表
+     */
+    public List<HandlerInterceptor> getInterceptors(String lookupPath, String bestPattern) {
+        if (this.mappedInterceptorList.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<HandlerInterceptor> interceptors = this.interceptorMap.get(lookupPath);
+        if (interceptors != null) {
+            return interceptors;
+        }
+        PatternInterceptors patternInterceptors = bestPattern != null ? this.patternInterceptorMap.get(bestPattern) : null;
+        if (patternInterceptors != null) {
+            return patternInterceptors.getInterceptors(lookupPath, this.pathMatcher);
+        }
+        return matchInterceptors(lookupPath);
+    }
+
+    private List<HandlerInterceptor> matchInterceptors(String lookupPath) {
+        return matchInterceptors(this.mappedInterceptorList, lookupPath, this.pathMatcher);
+    }
+
+    /**
+     * @param lookupPath 为空时返回全部拦截器
+     */
+    private static List<HandlerInterceptor> matchInterceptors(List<MappedInterceptor> mappedInterceptors, String lookupPath, PathMatcher pathMatcher) {
+        List<HandlerInterceptor> interceptors = new ArrayList<>(mappedInterceptors.size());
+        for (MappedInterceptor mappedInterceptor : mappedInterceptors) {
+            if (lookupPath == null || mappedInterceptor.matches(lookupPath, pathMatcher)) {
+                interceptors.add(mappedInterceptor.getInterceptor());
             }
         }
-        return chain;
+        if (interceptors.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(interceptors));
+    }
+
+    /**
+     * 拦截器匹配结果，用于查看
+     *
+     * @return 固定地址和模式地址对应的拦截器类名
+     */
+    public Map<String, Object> getInterceptorView() {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("interceptors", toClassNames(getInterceptorList()));
+        Map<String, List<String>> urls = new TreeMap<>();
+        for (Map.Entry<String, List<HandlerInterceptor>> entry : this.interceptorMap.entrySet()) {
+            urls.put(entry.getKey(), toClassNames(entry.getValue()));
+        }
+        view.put("urls", urls);
+        Map<String, List<String>> patterns = new TreeMap<>();
+        Map<String, List<String>> dynamicPatterns = new TreeMap<>();
+        for (Map.Entry<String, PatternInterceptors> entry : this.patternInterceptorMap.entrySet()) {
+            PatternInterceptors patternInterceptors = entry.getValue();
+            if (patternInterceptors.resolved) {
+                patterns.put(entry.getKey(), toClassNames(patternInterceptors.interceptors));
+            } else {
+                dynamicPatterns.put(entry.getKey(), toClassNames(matchInterceptors(patternInterceptors.candidates, null, null)));
+            }
+        }
+        view.put("patterns", patterns);
+        // 请求时才能确定的候选拦截器
+        view.put("dynamicPatterns", dynamicPatterns);
+        return view;
+    }
+
+    private List<HandlerInterceptor> getInterceptorList() {
+        List<HandlerInterceptor> interceptors = new ArrayList<>(this.mappedInterceptorList.size());
+        for (MappedInterceptor mappedInterceptor : this.mappedInterceptorList) {
+            interceptors.add(mappedInterceptor.getInterceptor());
+        }
+        return interceptors;
+    }
+
+    private static List<String> toClassNames(List<HandlerInterceptor> interceptors) {
+        List<String> classNames = new ArrayList<>(interceptors.size());
+        for (HandlerInterceptor interceptor : interceptors) {
+            classNames.add(ClassUtils.getUserClass(interceptor).getName());
+        }
+        return classNames;
     }
 
     /**
@@ -471,4 +916,32 @@ public class HttpHandlerMapping implements ApplicationContextAware, Initializing
         }
     }
 
+    /**
+     * 模式地址的拦截器
+     */
+    private static final class PatternInterceptors {
+
+        /**
+         * 匹配结果能确定的拦截器和需要请求时匹配的候选拦截器，保持配置顺序
+         */
+        private final List<MappedInterceptor> candidates;
+
+        /**
+         * 是否全部确定，全部确定时直接返回 interceptors
+         */
+        private final boolean resolved;
+
+        private final List<HandlerInterceptor> interceptors;
+
+        PatternInterceptors(List<MappedInterceptor> candidates, boolean resolved) {
+            this.candidates = candidates;
+            this.resolved = resolved;
+            this.interceptors = resolved ? matchInterceptors(candidates, null, null) : null;
+        }
+
+        List<HandlerInterceptor> getInterceptors(String lookupPath, PathMatcher pathMatcher) {
+            return resolved ? interceptors : matchInterceptors(candidates, lookupPath, pathMatcher);
+        }
+    }
+
 }
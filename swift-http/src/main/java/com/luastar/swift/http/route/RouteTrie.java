@@ -0,0 +1,144 @@
+package com.luastar.swift.http.route;
+
+import java.util.*;
+
+/**
+ * 按路径分段索引的路由前缀树，用于快速找出可能匹配请求地址的映射
+ * <p>
+ * 每个节点对应地址中的一段：固定段按名称索引；{var}、*、? 等单段模式共用一个子节点，匹配任意一段；
+ * ** 匹配剩余的任意段，到达该节点即为候选。最后一段同时按每个 . 之前的部分查找，兼容后缀匹配（/a 匹配 /a.json）；
+ * 空段忽略，兼容结尾斜杠匹配（/a 匹配 /a/、/a/* 匹配 /a/）。
+ * <p>
+ * 返回的候选只会多不会少，是否匹配、优先级和歧义检查仍由 {@link RequestMappingInfo} 和 AntPathMatcher 处理，
+ * 与 spring mvc 的行为一致。初始化完成后只读，线程安全。
+ */
+public class RouteTrie {
+
+    private static final String SEPARATOR = "/";
+
+    private static final String DOUBLE_WILDCARD = "**";
+
+    private final Node root = new Node();
+
+    /**
+     * 没有地址的映射，匹配所有请求
+     */
+    private final Set<RequestMappingInfo> always = new LinkedHashSet<>();
+
+    /**
+     * 添加映射
+     *
+     * @param pattern 映射地址，为空表示匹配所有请求
+     * @param mapping
+     */
+    public void add(String pattern, RequestMappingInfo mapping) {
+        if (pattern == null) {
+            always.add(mapping);
+            return;
+        }
+        Node node = root;
+        for (String segment : tokenize(pattern)) {
+            if (DOUBLE_WILDCARD.equals(segment)) {
+                node.catchAll.add(mapping);
+                return;
+            }
+            if (isPattern(segment)) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            } else {
+                node = node.literals.computeIfAbsent(segment, key -> new Node());
+            }
+        }
+        node.mappings.add(mapping);
+    }
+
+    /**
+     * 可能匹配请求地址的映射
+     *
+     * @param lookupPath
+     * @return
+     */
+    public Collection<RequestMappingInfo> getCandidates(String lookupPath) {
+        Set<RequestMappingInfo> result = new LinkedHashSet<>(always);
+        collect(root, tokenize(lookupPath), 0, result);
+        return result;
+    }
+
+    private void collect(Node node, List<String> segments, int index, Set<RequestMappingInfo> result) {
+        result.addAll(node.catchAll);
+        if (index == segments.size()) {
+            result.addAll(node.mappings);
+            // AntPathMatcher 中 /a/* 可以匹配 /a/
+            if (node.wildcard != null) {
+                result.addAll(node.wildcard.mappings);
+                result.addAll(node.wildcard.catchAll);
+            }
+            return;
+        }
+        String segment = segments.get(index);
+        Node child = node.literals.get(segment);
+        if (child != null) {
+            collect(child, segments, index + 1, result);
+        }
+        // 后缀匹配
+        if (index == segments.size() - 1) {
+            for (int i = segment.indexOf('.'); i > 0; i = segment.indexOf('.', i + 1)) {
+                child = node.literals.get(segment.substring(0, i));
+                if (child != null) {
+                    collect(child, segments, index + 1, result);
+                }
+            }
+        }
+        if (node.wildcard != null) {
+            collect(node.wildcard, segments, index + 1, result);
+        }
+    }
+
+    static boolean isPattern(String segment) {
+        return segment.indexOf('*') != -1 || segment.indexOf('?') != -1 || segment.indexOf('{') != -1;
+    }
+
+    /**
+     * 按 / 分段，忽略空段
+     */
+    private static List<String> tokenize(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf(SEPARATOR, start);
+            if (end == -1) {
+                end = length;
+            }
+            if (end > start) {
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> literals = new HashMap<>();
+
+        /**
+         * 单段模式
+         */
+        private Node wildcard;
+
+        /**
+         * 在此处遇到 ** 的映射
+         */
+        private final List<RequestMappingInfo> catchAll = new ArrayList<>();
+
+        /**
+         * 在此处结束的映射
+         */
+        private final List<RequestMappingInfo> mappings = new ArrayList<>();
+
+    }
+
+}
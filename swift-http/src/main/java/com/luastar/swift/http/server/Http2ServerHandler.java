@@ -0,0 +1,142 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http2.*;
+
+/**
+ * http2 连接处理
+ * <p>
+ * 入站：InboundHttp2ToHttpAdapter 把每个 stream 聚合成 FullHttpRequest，请求头 x-http2-stream-id 为 stream id；
+ * 出站：返回头带上相同的 stream id，HttpResponse/HttpContent 转换成 http2 帧，{@link Http2StreamContent} 直接写到指定 stream，
+ * {@link Http2StreamReset} 重置指定 stream。
+ * 业务处理与 http1.1 相同。
+ * <p>
+ * 是否 http2 连接根据 pipeline 中是否有 Http2ServerHandler 判断，http1.1 请求中客户端发送的 x-http2-stream-id 在进入业务处理前删除。
+ */
+public class Http2ServerHandler extends HttpToHttp2ConnectionHandler {
+
+    private static final String STREAM_ID = HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text().toString();
+
+    protected Http2ServerHandler(Http2ConnectionDecoder decoder,
+                                 Http2ConnectionEncoder encoder,
+                                 Http2Settings initialSettings,
+                                 boolean validateHeaders) {
+        super(decoder, encoder, initialSettings, validateHeaders);
+    }
+
+    /**
+     * 根据配置创建，每个连接一个
+     *
+     * @return
+     */
+    public static Http2ServerHandler newHandler() {
+        Http2Connection connection = new DefaultHttp2Connection(true);
+        InboundHttp2ToHttpAdapter listener = new InboundHttp2ToHttpAdapterBuilder(connection)
+                .maxContentLength(HttpConstant.SWIFT_MAX_CONTENT_LENGTH)
+                .propagateSettings(false)
+                .validateHttpHeaders(false)
+                .build();
+        Http2Settings settings = new Http2Settings()
+                .maxConcurrentStreams(HttpConstant.SWIFT_HTTP2_MAX_CONCURRENT_STREAMS);
+        return new Builder()
+                .connection(connection)
+                .frameListener(listener)
+                .initialSettings(settings)
+                .build();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (msg instanceof Http2StreamContent) {
+            Http2StreamContent content = (Http2StreamContent) msg;
+            encoder().writeData(ctx, content.streamId(), content.content(), 0, content.isEndStream(), promise);
+            return;
+        }
+        if (msg instanceof Http2StreamReset) {
+            Http2StreamReset reset = (Http2StreamReset) msg;
+            encoder().writeRstStream(ctx, reset.streamId(), reset.error().code(), promise);
+            return;
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    /**
+     * 是否 http2 连接（包括 h2c 升级后的连接）
+     *
+     * @param ctx
+     * @return
+     */
+    public static boolean isHttp2(ChannelHandlerContext ctx) {
+        return ctx.pipeline().get(Http2ServerHandler.class) != null;
+    }
+
+    /**
+     * 删除 stream id
+     *
+     * @param headers
+     */
+    public static void removeStreamId(HttpHeaders headers) {
+        headers.remove(STREAM_ID);
+    }
+
+    /**
+     * 获取 stream id，不是 http2 请求时返回 null
+     *
+     * @param headers
+     * @return
+     */
+    public static Integer getStreamId(HttpHeaders headers) {
+        return headers.getInt(STREAM_ID);
+    }
+
+    /**
+     * 复制 stream id 到返回头
+     *
+     * @param from
+     * @param to
+     */
+    public static void copyStreamId(HttpHeaders from, HttpHeaders to) {
+        String streamId = from.get(STREAM_ID);
+        if (streamId != null) {
+            to.set(STREAM_ID, streamId);
+        }
+    }
+
+    public static void setStreamId(HttpHeaders headers, int streamId) {
+        headers.setInt(STREAM_ID, streamId);
+    }
+
+    private static class Builder extends AbstractHttp2ConnectionHandlerBuilder<Http2ServerHandler, Builder> {
+
+        @Override
+        protected Builder connection(Http2Connection connection) {
+            return super.connection(connection);
+        }
+
+        @Override
+        protected Builder frameListener(Http2FrameListener frameListener) {
+            return super.frameListener(frameListener);
+        }
+
+        @Override
+        protected Builder initialSettings(Http2Settings settings) {
+            return super.initialSettings(settings);
+        }
+
+        @Override
+        protected Http2ServerHandler build() {
+            return super.build();
+        }
+
+        @Override
+        protected Http2ServerHandler build(Http2ConnectionDecoder decoder,
+                                           Http2ConnectionEncoder encoder,
+                                           Http2Settings initialSettings) {
+            return new Http2ServerHandler(decoder, encoder, initialSettings, isValidateHeaders());
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.luastar.swift.http.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.stream.ChunkedInput;
+
+/**
+ * http2 连接上的分块输入，与 HttpChunkedInput 相同，输出带 stream id 的 {@link Http2StreamContent}
+ */
+public class Http2StreamChunkedInput implements ChunkedInput<HttpContent> {
+
+    private final int streamId;
+
+    private final ChunkedInput<ByteBuf> input;
+
+    private boolean sentLastChunk;
+
+    public Http2StreamChunkedInput(int streamId, ChunkedInput<ByteBuf> input) {
+        this.streamId = streamId;
+        this.input = input;
+    }
+
+    @Override
+    public boolean isEndOfInput() throws Exception {
+        if (input.isEndOfInput()) {
+            return sentLastChunk;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws Exception {
+        input.close();
+    }
+
+    @Deprecated
+    @Override
+    public HttpContent readChunk(ChannelHandlerContext ctx) throws Exception {
+        return readChunk(ctx.alloc());
+    }
+
+    @Override
+    public HttpContent readChunk(ByteBufAllocator allocator) throws Exception {
+        if (input.isEndOfInput()) {
+            if (sentLastChunk) {
+                return null;
+            }
+            sentLastChunk = true;
+            return new Http2StreamContent(streamId, Unpooled.EMPTY_BUFFER, true);
+        }
+        ByteBuf buf = input.readChunk(allocator);
+        if (buf == null) {
+            return null;
+        }
+        return new Http2StreamContent(streamId, buf, false);
+    }
+
+    @Override
+    public long length() {
+        return input.length();
+    }
+
+    @Override
+    public long progress() {
+        return input.progress();
+    }
+
+}
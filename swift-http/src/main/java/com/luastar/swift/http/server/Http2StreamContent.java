@@ -0,0 +1,32 @@
+package com.luastar.swift.http.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultHttpContent;
+
+/**
+ * http2 连接上带 stream id 的分块内容
+ * <p>
+ * HttpToHttp2ConnectionHandler 把 HttpContent 写到最后一次输出返回头的 stream 上，
+ * 多个 stream 同时分块输出时会写乱，分块输出和文件输出在 http2 连接上使用该类指定 stream。
+ */
+public class Http2StreamContent extends DefaultHttpContent {
+
+    private final int streamId;
+
+    private final boolean endStream;
+
+    public Http2StreamContent(int streamId, ByteBuf content, boolean endStream) {
+        super(content);
+        this.streamId = streamId;
+        this.endStream = endStream;
+    }
+
+    public int streamId() {
+        return streamId;
+    }
+
+    public boolean isEndStream() {
+        return endStream;
+    }
+
+}
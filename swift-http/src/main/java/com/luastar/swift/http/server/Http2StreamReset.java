@@ -0,0 +1,27 @@
+package com.luastar.swift.http.server;
+
+import io.netty.handler.codec.http2.Http2Error;
+
+/**
+ * http2 连接上重置指定 stream，已经开始输出的返回不能正常结束时使用
+ */
+public class Http2StreamReset {
+
+    private final int streamId;
+
+    private final Http2Error error;
+
+    public Http2StreamReset(int streamId, Http2Error error) {
+        this.streamId = streamId;
+        this.error = error;
+    }
+
+    public int streamId() {
+        return streamId;
+    }
+
+    public Http2Error error() {
+        return error;
+    }
+
+}
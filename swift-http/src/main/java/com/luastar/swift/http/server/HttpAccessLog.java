@@ -0,0 +1,376 @@
+package com.luastar.swift.http.server;
+
+import com.alibaba.fastjson.JSON;
+import com.luastar.swift.http.constant.HttpConstant;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.CharsetUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步访问日志（swift.accessLog.async=true）
+ * <p>
+ * 1. 业务线程只复制请求和返回的关键信息，放入启动时分配好的环形缓冲区（swift.accessLog.bufferSize），
+ * 缓冲区满时丢弃并计数，不阻塞业务线程.
+ * <p>
+ * 2. swift-access-log 线程序列化请求头、返回头，设置原来的 MDC 字段后输出一行 [swift][access] 日志.
+ * <p>
+ * 3. 请求体和返回内容最多复制 swift.accessLog.maxBodyLength 字节；
+ * 按 {@link HttpService#logSampleRate()} 或 swift.accessLog.sampleRate 采样.
+ */
+public class HttpAccessLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpAccessLog.class);
+
+    private static final Event[] ring;
+
+    private static final int mask;
+
+    /**
+     * 下一个写入位置，多个业务线程竞争
+     */
+    private static final AtomicLong tail = new AtomicLong();
+
+    /**
+     * 下一个读取位置，只在 swift-access-log 线程中使用
+     */
+    private static volatile long head = 0;
+
+    private static final AtomicLong loggedCount = new AtomicLong();
+
+    private static final AtomicLong droppedCount = new AtomicLong();
+
+    private static final AtomicLong sampledOutCount = new AtomicLong();
+
+    private static final Thread writer;
+
+    private static volatile boolean waiting = false;
+
+    private static volatile boolean running = true;
+
+    static {
+        // 容量取 2 的幂，按位与计算下标
+        int capacity = Integer.highestOneBit(Math.max(2, HttpConstant.SWIFT_ACCESS_LOG_BUFFER_SIZE) - 1) << 1;
+        ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Event(i);
+        }
+        mask = capacity - 1;
+        writer = new Thread(HttpAccessLog::drain, "swift-access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private HttpAccessLog() {
+    }
+
+    /**
+     * 记录访问日志，在业务线程中执行
+     *
+     * @param request
+     * @param response   为空时只记录状态码，例如执行超时
+     * @param status
+     * @param cost       毫秒
+     * @param sampleRate 采样比例，大于等于 1 全部记录，小于等于 0 不记录
+     * @return 是否放入缓冲区
+     */
+    public static boolean log(HttpRequest request, HttpResponse response, int status, long cost, double sampleRate) {
+        if (sampleRate < 1 && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            sampledOutCount.incrementAndGet();
+            return false;
+        }
+        // 先复制数据，占用位置后不再有可能抛出异常的操作
+        io.netty.handler.codec.http.FullHttpRequest fullHttpRequest = request.getFullHttpRequest();
+        HttpHeaders requestHeaders = fullHttpRequest.headers();
+        ByteBuf content = fullHttpRequest.content();
+        int requestBodyLength = content != null ? content.readableBytes() : 0;
+        byte[] requestBody = copyBody(content);
+        List<Map.Entry<String, String>> responseHeaders = null;
+        Object responseBody = null;
+        if (response != null) {
+            responseHeaders = response.getHeaders().entries();
+            responseBody = copyBody(response);
+        }
+        String ip = request.getIp();
+        Event event = claim();
+        if (event == null) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        event.requestId = request.getRequestId();
+        event.ip = ip;
+        event.socketIp = request.getSocketIp();
+        event.method = request.getMethod();
+        event.uri = request.getUri();
+        event.requestHeaders = requestHeaders;
+        event.requestBody = requestBody;
+        event.requestBodyLength = requestBodyLength;
+        event.status = status;
+        event.responseHeaders = responseHeaders;
+        event.responseBody = responseBody;
+        event.cost = cost;
+        event.publish();
+        if (waiting) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * 占用一个位置，缓冲区满时返回 null
+     */
+    private static Event claim() {
+        long position = tail.get();
+        while (true) {
+            Event event = ring[(int) (position & mask)];
+            long diff = event.sequence - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return event;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 最多复制 maxBodyLength 字节，截断时不拆开 utf-8 字符
+     */
+    /**
+     * 最多 maxLength 字节的截断长度，截断位置退回到完整的 utf-8 字符
+     */
+    static int truncateLength(ByteBuf buf, int maxLength) {
+        int length = Math.min(buf.readableBytes(), maxLength);
+        if (length < buf.readableBytes()) {
+            while (length > 0 && (buf.getByte(buf.readerIndex() + length) & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        return length;
+    }
+
+    private static byte[] copyBody(ByteBuf buf) {
+        if (buf == null || !buf.isReadable()) {
+            return null;
+        }
+        int length = truncateLength(buf, HttpConstant.SWIFT_ACCESS_LOG_MAX_BODY_LENGTH);
+        byte[] bytes = new byte[length];
+        buf.getBytes(buf.readerIndex(), bytes);
+        return bytes;
+    }
+
+    /**
+     * 返回内容，与 {@link HttpResponse#getFullHttpResponse()} 的优先级一致，字符串超长时截取，否则直接引用
+     */
+    private static Object copyBody(HttpResponse response) {
+        if (response.isChunked()) {
+            return "response body is chunked";
+        }
+        if (response.getFile() != null) {
+            return "response body is file : " + response.getFile().getAbsolutePath();
+        }
+        if (response.getOutputStream() != null) {
+            return "response body is stream";
+        }
+        if (response.getBody() != null) {
+            return copyBody(response.getBody());
+        }
+        String result = response.getResult();
+        if (StringUtils.isNotEmpty(result)) {
+            return result.length() > HttpConstant.SWIFT_ACCESS_LOG_MAX_BODY_LENGTH
+                    ? result.substring(0, HttpConstant.SWIFT_ACCESS_LOG_MAX_BODY_LENGTH) : result;
+        }
+        return null;
+    }
+
+    /**
+     * swift-access-log 线程
+     */
+    private static void drain() {
+        while (true) {
+            Event event = ring[(int) (head & mask)];
+            if (event.sequence == head + 1) {
+                try {
+                    write(event);
+                } catch (Throwable e) {
+                    logger.error("输出访问日志异常 : {}", e.toString());
+                } finally {
+                    MDC.clear();
+                    event.recycle(head + ring.length);
+                    head++;
+                }
+                continue;
+            }
+            if (!running) {
+                return;
+            }
+            waiting = true;
+            if (ring[(int) (head & mask)].sequence != head + 1) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            waiting = false;
+        }
+    }
+
+    private static void write(Event event) {
+        String requestHeaderJson = JSON.toJSONString(toMap(event.requestHeaders));
+        String responseHeaderJson = event.responseHeaders != null ? JSON.toJSONString(event.responseHeaders) : null;
+        String requestBody = event.requestBody != null ? new String(event.requestBody, CharsetUtil.UTF_8) : null;
+        String responseBody = event.responseBody instanceof byte[]
+                ? new String((byte[]) event.responseBody, CharsetUtil.UTF_8) : (String) event.responseBody;
+        MDC.put(HttpConstant.MDC_KEY_REQUESTID, event.requestId);
+        MDC.put(HttpConstant.MDC_KEY_REQUEST_ID, event.requestId);
+        MDC.put(HttpConstant.MDC_KEY_REQUEST_IP, event.ip);
+        MDC.put(HttpConstant.MDC_KEY_REQUEST_URI, event.uri);
+        MDC.put(HttpConstant.MDC_KEY_REQUEST_METHOD, event.method);
+        MDC.put(HttpConstant.MDC_KEY_REQUEST_HEADER, requestHeaderJson);
+        MDC.put(HttpConstant.MDC_KEY_RESPONSE_STATUS, String.valueOf(event.status));
+        MDC.put(HttpConstant.MDC_KEY_REQUEST_COST, String.valueOf(event.cost));
+        if (requestBody != null) {
+            MDC.put(HttpConstant.MDC_KEY_REQUEST_BODY, requestBody);
+        }
+        if (responseHeaderJson != null) {
+            MDC.put(HttpConstant.MDC_KEY_RESPONSE_HEADER, responseHeaderJson);
+        }
+        if (responseBody != null) {
+            MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, responseBody);
+        }
+        StringBuilder line = new StringBuilder(256 + requestHeaderJson.length());
+        line.append('{');
+        append(line, "request_ip", JSON.toJSONString(event.ip)).append(',');
+        append(line, "socket_ip", JSON.toJSONString(event.socketIp)).append(',');
+        append(line, HttpConstant.MDC_KEY_REQUEST_METHOD, JSON.toJSONString(event.method)).append(',');
+        append(line, HttpConstant.MDC_KEY_REQUEST_URI, JSON.toJSONString(event.uri)).append(',');
+        append(line, HttpConstant.MDC_KEY_REQUEST_HEADER, requestHeaderJson).append(',');
+        if (requestBody != null) {
+            append(line, HttpConstant.MDC_KEY_REQUEST_BODY, JSON.toJSONString(requestBody)).append(',');
+            append(line, "request_body_length", String.valueOf(event.requestBodyLength)).append(',');
+        }
+        append(line, HttpConstant.MDC_KEY_RESPONSE_STATUS, String.valueOf(event.status)).append(',');
+        if (responseHeaderJson != null) {
+            append(line, HttpConstant.MDC_KEY_RESPONSE_HEADER, responseHeaderJson).append(',');
+        }
+        if (responseBody != null) {
+            append(line, HttpConstant.MDC_KEY_RESPONSE_BODY, JSON.toJSONString(responseBody)).append(',');
+        }
+        append(line, HttpConstant.MDC_KEY_REQUEST_COST, String.valueOf(event.cost));
+        line.append('}');
+        logger.info("[swift][access] {}", line);
+        loggedCount.incrementAndGet();
+    }
+
+    private static StringBuilder append(StringBuilder line, String key, String json) {
+        return line.append('"').append(key).append("\":").append(json);
+    }
+
+    private static Map<String, String> toMap(HttpHeaders headers) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : headers) {
+            map.put(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    /**
+     * 停止时输出缓冲区中剩余的日志
+     */
+    public static void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 已输出的访问日志数
+     */
+    public static long getLoggedCount() {
+        return loggedCount.get();
+    }
+
+    /**
+     * 缓冲区满时丢弃的访问日志数
+     */
+    public static long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 未被采样的请求数
+     */
+    public static long getSampledOutCount() {
+        return sampledOutCount.get();
+    }
+
+    /**
+     * 缓冲区中等待输出的访问日志数
+     */
+    public static long getPendingCount() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * 缓冲区中的一个位置，sequence 等于写入位置时可以写入，等于写入位置 + 1 时可以读取
+     */
+    private static class Event {
+
+        private volatile long sequence;
+
+        private String requestId;
+        private String ip;
+        private String socketIp;
+        private String method;
+        private String uri;
+        private HttpHeaders requestHeaders;
+        private byte[] requestBody;
+        private int requestBodyLength;
+        private int status;
+        private List<Map.Entry<String, String>> responseHeaders;
+        /**
+         * String 或 byte[]
+         */
+        private Object responseBody;
+        private long cost;
+
+        private Event(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void publish() {
+            sequence = sequence + 1;
+        }
+
+        private void recycle(long next) {
+            requestId = null;
+            ip = null;
+            socketIp = null;
+            method = null;
+            uri = null;
+            requestHeaders = null;
+            requestBody = null;
+            responseHeaders = null;
+            responseBody = null;
+            sequence = next;
+        }
+
+    }
+
+}
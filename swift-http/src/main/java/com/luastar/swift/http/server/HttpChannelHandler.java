@@ -9,34 +9,71 @@ import com.luastar.swift.http.route.HttpHandlerMapping;
 import com.luastar.swift.http.route.HttpRequestHandler;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
-import org.springframework.util.ReflectionUtils;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class HttpChannelHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpChannelHandler.class);
 
+    /**
+     * inline 方法阻塞 worker-group 线程的次数
+     */
+    private static final AtomicLong inlineBlockingCount = new AtomicLong();
+
     private final HttpHandlerMapping handlerMapping;
 
+    /**
+     * 连接恢复可写时通知分块输出
+     */
+    private final HttpWritabilityMonitor writabilityMonitor = new HttpWritabilityMonitor();
+
+    /**
+     * 并发限制，为空表示不限制
+     */
+    private final HttpConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * http1.1 管道化请求按顺序输出
+     */
+    private HttpPipelineSequencer pipelineSequencer;
+
+    /**
+     * 当前连接已经处理的 http1.1 请求数
+     */
+    private int requestCount = 0;
+
+    public HttpChannelHandler(HttpHandlerMapping handlerMapping) {
+        this(handlerMapping, null);
+    }
+
     /**
      * 在 worker-group 线程池中执行
      *
      * @param handlerMapping
+     * @param concurrencyLimiter
      */
-    public HttpChannelHandler(HttpHandlerMapping handlerMapping) {
+    public HttpChannelHandler(HttpHandlerMapping handlerMapping, HttpConcurrencyLimiter concurrencyLimiter) {
         // 使用自定义线程池异步执行时不能自动释放
         super(false);
         logger.info("初始化HttpChannelHandler");
@@ -44,6 +81,19 @@ public class HttpChannelHandler extends SimpleChannelInboundHandler<FullHttpRequ
             throw new IllegalArgumentException("handlerMapping不能为空！");
         }
         this.handlerMapping = handlerMapping;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        pipelineSequencer = new HttpPipelineSequencer(ctx, HttpConstant.SWIFT_PIPELINE_MAX_DEPTH, writabilityMonitor);
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        pipelineSequencer.close();
+        super.channelInactive(ctx);
     }
 
     /**
@@ -65,89 +115,373 @@ public class HttpChannelHandler extends SimpleChannelInboundHandler<FullHttpRequ
             ctx.write(fullHttpResponse);
             return;
         }
+        // stream id 只能来自 http2 连接，http1.1 客户端发送的同名请求头直接删除
+        if (!Http2ServerHandler.isHttp2(ctx)) {
+            Http2ServerHandler.removeStreamId(fullHttpRequest.headers());
+        }
+        // 达到每个连接最大请求数后关闭连接
+        if (HttpConstant.SWIFT_CONNECTION_MAX_REQUESTS > 0
+                && Http2ServerHandler.getStreamId(fullHttpRequest.headers()) == null
+                && ++requestCount == HttpConstant.SWIFT_CONNECTION_MAX_REQUESTS
+                && HttpUtil.isKeepAlive(fullHttpRequest)) {
+            HttpUtil.setKeepAlive(fullHttpRequest, false);
+            HttpConnectionManager.recycled();
+        }
+        // 管道化请求按读取顺序分配输出序号，业务并行处理
+        HttpPipelineSequencer.Slot slot = pipelineSequencer.next(fullHttpRequest);
+        boolean inline = handlerMapping.isInlineRequest(fullHttpRequest.uri());
+        // 超过并发限制直接返回 503
+        if (!inline && concurrencyLimiter != null && !concurrencyLimiter.tryAcquire()) {
+            rejectRequest(ctx, slot, fullHttpRequest);
+            return;
+        }
         // 异步处理业务逻辑
-        HttpThreadPoolExecutor.submit(() -> {
+        HttpTask httpTask = new HttpTask(ctx, slot, fullHttpRequest, task -> {
             HttpRequest httpRequest = null;
             HttpResponse httpResponse = null;
             long startTime = System.currentTimeMillis();
+            boolean async = false;
             try {
-                String requestId = fullHttpRequest.headers().get(HttpConstant.MDC_KEY_REQUESTID);
-                if (ObjUtils.isEmpty(requestId)) {
-                    requestId = fullHttpRequest.headers().get(HttpConstant.MDC_KEY_REQUEST_ID);
-                }
-                if (ObjUtils.isEmpty(requestId)) {
-                    requestId = RandomStringUtils.random(16, true, true);
-                }
+                // 已经在 worker-group 线程中查找过处理方法时直接复用
+                httpRequest = task.getRoutedRequest();
+                String requestId = httpRequest != null ? httpRequest.getRequestId() : getRequestId(fullHttpRequest);
                 MDC.clear();
                 MDC.put(HttpConstant.MDC_KEY_REQUESTID, requestId);
                 MDC.put(HttpConstant.MDC_KEY_REQUEST_ID, requestId);
                 logger.info("业务逻辑处理开始......");
                 // 初始化HttpRequest
-                httpRequest = new HttpRequest(fullHttpRequest, requestId, getSocketAddressIp(ctx));
-                httpRequest.logRequest();
+                if (httpRequest == null) {
+                    httpRequest = new HttpRequest(fullHttpRequest, requestId, getSocketAddressIp(ctx));
+                }
+                if (HttpConstant.SWIFT_ACCESS_LOG_ASYNC) {
+                    httpRequest.putRequestMdc();
+                } else {
+                    httpRequest.logRequest();
+                }
                 // 初始化HttpResponse
                 httpResponse = new HttpResponse(httpRequest.getRequestId());
+                httpResponse.setChannelContext(ctx, task.getSlot(), writabilityMonitor);
+                task.setHttpResponse(httpResponse);
+                Http2ServerHandler.copyStreamId(fullHttpRequest.headers(), httpResponse.getHeaders());
+                if (HttpUtil.isKeepAlive(fullHttpRequest)) {
+                    httpResponse.setHeader(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+                }
                 // 查找处理类方法
-                HandlerExecutionChain mappedHandler = handlerMapping.getHandler(httpRequest);
+                HandlerExecutionChain mappedHandler = task.getRoutedRequest() != null ? task.getMappedHandler() : handlerMapping.getHandler(httpRequest);
                 if (mappedHandler == null) {
                     httpResponse.setStatus(HttpResponseStatus.NOT_FOUND);
-                    handleHttpResponse(ctx, httpRequest, httpResponse);
+                    handleHttpResponse(ctx, task, httpRequest, httpResponse);
                     return;
                 }
+                // 方法级别超时时间和访问日志采样比例
+                if (mappedHandler.getHandler() instanceof HandlerMethod) {
+                    int timeout = ((HandlerMethod) mappedHandler.getHandler()).getTimeout();
+                    // inline 方法在 worker-group 线程中执行，不能被超时中断
+                    if (timeout >= 0 && !inline) {
+                        task.schedule(timeout);
+                    }
+                    double logSampleRate = ((HandlerMethod) mappedHandler.getHandler()).getLogSampleRate();
+                    if (logSampleRate >= 0) {
+                        task.setLogSampleRate(logSampleRate);
+                    }
+                }
                 // 拦截器处理前
                 if (!mappedHandler.applyPreHandle(httpRequest, httpResponse)) {
-                    handleHttpResponse(ctx, httpRequest, httpResponse);
+                    handleHttpResponse(ctx, task, httpRequest, httpResponse);
                     return;
                 }
                 // 执行方法
+                Object result = null;
                 Object handler = mappedHandler.getHandler();
                 if (handler instanceof HttpRequestHandler) {
                     HttpRequestHandler requestHandler = (HttpRequestHandler) handler;
                     requestHandler.handleRequest(httpRequest, httpResponse);
                 } else if (handler instanceof HandlerMethod) {
-                    HandlerMethod handlerMethod = (HandlerMethod) handler;
-                    Method method = handlerMethod.getMethod();
-                    Object[] args = new Object[]{httpRequest, httpResponse};
-                    ReflectionUtils.makeAccessible(method);
-                    method.invoke(handlerMethod.getBean(), args);
+                    result = ((HandlerMethod) handler).invoke(httpRequest, httpResponse);
                 } else {
                     logger.warn("not support handler : {}", handler);
                 }
+                // 异步方法，完成后再处理返回结果，释放业务线程
+                if (result instanceof CompletionStage) {
+                    async = true;
+                    handleAsyncResult(ctx, task, mappedHandler, httpRequest, httpResponse, (CompletionStage<?>) result, startTime);
+                    return;
+                }
                 // 拦截器处理后
                 mappedHandler.applyPostHandle(httpRequest, httpResponse);
                 // 处理返回结果
-                handleHttpResponse(ctx, httpRequest, httpResponse);
+                handleHttpResponse(ctx, task, httpRequest, httpResponse);
             } catch (Throwable e) {
-                try {
-                    // 处理业务异常
-                    if (e instanceof InvocationTargetException) {
-                        handlerMapping.businessExceptionHandle(httpRequest, httpResponse, ((InvocationTargetException) e).getTargetException());
-                    } else {
-                        handlerMapping.businessExceptionHandle(httpRequest, httpResponse, e);
-                    }
-                    // 处理返回结果
-                    handleHttpResponse(ctx, httpRequest, httpResponse);
-                } catch (Throwable ex) {
-                    // 处理系统异常
-                    exceptionCaught(ctx, ex);
-                }
+                handleException(ctx, task, httpRequest, httpResponse, e);
             } finally {
-                // 销毁数据
-                logger.info("业务数据销毁......");
-                if (httpRequest != null) {
-                    httpRequest.destroy();
+                if (!async) {
+                    destroy(httpRequest, httpResponse, startTime);
                 }
-                if (httpResponse != null) {
-                    httpResponse.destroy();
+            }
+        });
+        // 非阻塞的方法直接在 worker-group 线程中执行
+        if (inline) {
+            runInline(httpTask, fullHttpRequest.uri());
+            return;
+        }
+        if (concurrencyLimiter != null) {
+            httpTask.setFinishListener(() -> concurrencyLimiter.release(System.currentTimeMillis() - httpTask.getCreateTime(), httpTask.isTimeout()));
+        }
+        String executorGroup = getExecutorGroup(ctx, httpTask, fullHttpRequest);
+        httpTask.schedule(HttpConstant.SWIFT_EXECUTE_TIMEOUT);
+        try {
+            HttpThreadPoolExecutor.submit(executorGroup, httpTask);
+        } catch (RejectedExecutionException e) {
+            // 线程池已满
+            httpTask.cancel();
+            if (concurrencyLimiter != null) {
+                concurrencyLimiter.release(0, true);
+            }
+            logger.warn("业务线程池已满，拒绝请求 : {}", fullHttpRequest.uri());
+            rejectRequest(ctx, slot, fullHttpRequest);
+        } catch (Exception e) {
+            httpTask.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * 确定请求使用的业务线程池分组，在 worker-group 线程中执行；
+     * 固定地址直接取缓存的分组，其他地址只查找一次处理方法，结果交给业务线程复用
+     *
+     * @param ctx
+     * @param httpTask
+     * @param fullHttpRequest
+     * @return 分组名，为空表示使用共享的业务线程池
+     */
+    protected String getExecutorGroup(ChannelHandlerContext ctx, HttpTask httpTask, FullHttpRequest fullHttpRequest) {
+        if (!handlerMapping.hasExecutorGroup()) {
+            return null;
+        }
+        String executorGroup = handlerMapping.getUrlExecutorGroup(fullHttpRequest.uri());
+        if (executorGroup != null) {
+            return executorGroup;
+        }
+        HttpRequest httpRequest = new HttpRequest(fullHttpRequest, getRequestId(fullHttpRequest), getSocketAddressIp(ctx));
+        try {
+            HandlerExecutionChain mappedHandler = handlerMapping.getHandler(httpRequest);
+            httpTask.setRoute(httpRequest, mappedHandler);
+            return handlerMapping.getExecutorGroup(mappedHandler);
+        } catch (Exception e) {
+            // 路由异常交给共享的业务线程池重新查找并处理
+            return null;
+        }
+    }
+
+    /**
+     * 请求编号，优先使用请求头中的编号
+     *
+     * @param fullHttpRequest
+     * @return
+     */
+    protected String getRequestId(FullHttpRequest fullHttpRequest) {
+        String requestId = fullHttpRequest.headers().get(HttpConstant.MDC_KEY_REQUESTID);
+        if (ObjUtils.isEmpty(requestId)) {
+            requestId = fullHttpRequest.headers().get(HttpConstant.MDC_KEY_REQUEST_ID);
+        }
+        if (ObjUtils.isEmpty(requestId)) {
+            requestId = RandomStringUtils.random(16, true, true);
+        }
+        return requestId;
+    }
+
+    /**
+     * 异步方法的 CompletionStage 完成后执行拦截器、处理返回结果并销毁数据，在完成 CompletionStage 的线程中执行
+     *
+     * @param ctx
+     * @param task
+     * @param mappedHandler
+     * @param httpRequest
+     * @param httpResponse
+     * @param stage
+     * @param startTime
+     */
+    protected void handleAsyncResult(ChannelHandlerContext ctx,
+                                     HttpTask task,
+                                     HandlerExecutionChain mappedHandler,
+                                     HttpRequest httpRequest,
+                                     HttpResponse httpResponse,
+                                     CompletionStage<?> stage,
+                                     long startTime) {
+        task.setAsync(stage);
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+        logger.info("异步方法执行中，释放业务线程......");
+        stage.whenComplete((value, throwable) -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            if (mdcContext != null) {
+                MDC.setContextMap(mdcContext);
+            }
+            try {
+                if (throwable != null) {
+                    throw throwable;
+                }
+                // 拦截器处理后
+                mappedHandler.applyPostHandle(httpRequest, httpResponse);
+                // 处理返回结果
+                handleHttpResponse(ctx, task, httpRequest, httpResponse);
+            } catch (Throwable e) {
+                if (e instanceof CompletionException && e.getCause() != null) {
+                    e = e.getCause();
+                }
+                handleException(ctx, task, httpRequest, httpResponse, e);
+            } finally {
+                destroy(httpRequest, httpResponse, startTime);
+                task.finish();
+                if (previous != null) {
+                    MDC.setContextMap(previous);
+                } else {
+                    MDC.clear();
                 }
-                long cost = System.currentTimeMillis() - startTime;
-                MDC.put(HttpConstant.MDC_KEY_REQUEST_COST, String.valueOf(cost));
-                logger.info("业务逻辑处理结束，耗时{}毫秒......", cost);
-                logger.info("[swift][access]");
             }
         });
     }
 
+    /**
+     * 处理业务异常
+     *
+     * @param ctx
+     * @param task
+     * @param httpRequest
+     * @param httpResponse
+     * @param e
+     */
+    protected void handleException(ChannelHandlerContext ctx, HttpTask task, HttpRequest httpRequest, HttpResponse httpResponse, Throwable e) {
+        if (task.isTimeout()) {
+            logger.warn("请求执行超时，业务异常 : {}", e.toString());
+            return;
+        }
+        try {
+            if (httpResponse != null && httpResponse.isChunked()) {
+                HttpChunkedWriter chunkedWriter = httpResponse.getChunkedWriter();
+                if (chunkedWriter.isCommitted()) {
+                    // 已经开始分块输出，不能再输出错误结果，中止输出让客户端知道返回不完整
+                    logger.error("分块输出过程中业务异常，中止输出", e);
+                    if (task.complete()) {
+                        chunkedWriter.abort();
+                    }
+                    return;
+                }
+                // 还没有开始输出，丢弃分块输出，按普通返回输出错误结果
+                httpResponse.discardChunkedWriter();
+            }
+            // 处理业务异常
+            handlerMapping.businessExceptionHandle(httpRequest, httpResponse, e);
+            // 处理返回结果
+            handleHttpResponse(ctx, task, httpRequest, httpResponse);
+        } catch (Throwable ex) {
+            // 处理系统异常
+            exceptionCaught(ctx, ex);
+        }
+    }
+
+    /**
+     * 销毁数据
+     *
+     * @param httpRequest
+     * @param httpResponse
+     * @param startTime
+     */
+    protected void destroy(HttpRequest httpRequest, HttpResponse httpResponse, long startTime) {
+        logger.info("业务数据销毁......");
+        if (httpRequest != null) {
+            httpRequest.destroy();
+        }
+        if (httpResponse != null) {
+            httpResponse.destroy();
+        }
+        long cost = System.currentTimeMillis() - startTime;
+        logger.info("业务逻辑处理结束，耗时{}毫秒......", cost);
+        // 异步访问日志在输出结果时记录
+        if (!HttpConstant.SWIFT_ACCESS_LOG_ASYNC) {
+            MDC.put(HttpConstant.MDC_KEY_REQUEST_COST, String.valueOf(cost));
+            logger.info("[swift][access]");
+        }
+    }
+
+    /**
+     * 在 worker-group 线程中执行，不设置超时，执行时间过长时输出警告
+     *
+     * @param httpTask
+     * @param uri
+     */
+    protected void runInline(HttpTask httpTask, String uri) {
+        long startTime = System.nanoTime();
+        try {
+            httpTask.run();
+        } finally {
+            MDC.clear();
+            long cost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            if (cost > HttpConstant.SWIFT_INLINE_BLOCKING_THRESHOLD) {
+                logger.warn("inline 方法阻塞 worker-group 线程{}毫秒，累计{}次，请去掉 inline : {}", cost, inlineBlockingCount.incrementAndGet(), uri);
+            }
+        }
+    }
+
+    /**
+     * inline 方法阻塞 worker-group 线程的次数
+     */
+    public static long getInlineBlockingCount() {
+        return inlineBlockingCount.get();
+    }
+
+    /**
+     * 拒绝请求，返回 503 和 Retry-After，在 worker-group 线程中执行
+     *
+     * @param ctx
+     * @param slot
+     * @param fullHttpRequest
+     */
+    protected void rejectRequest(ChannelHandlerContext ctx, HttpPipelineSequencer.Slot slot, FullHttpRequest fullHttpRequest) {
+        boolean keepAlive = HttpUtil.isKeepAlive(fullHttpRequest);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SERVICE_UNAVAILABLE);
+        Http2ServerHandler.copyStreamId(fullHttpRequest.headers(), response.headers());
+        if (fullHttpRequest instanceof HttpStreamingRequest) {
+            ((HttpStreamingRequest) fullHttpRequest).destroyBody();
+        }
+        ReferenceCountUtil.release(fullHttpRequest);
+        response.headers().set(HttpHeaderNames.RETRY_AFTER, HttpConstant.SWIFT_LIMIT_RETRY_AFTER);
+        HttpUtil.setContentLength(response, 0);
+        if (keepAlive) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            slot.writeLast(response);
+        } else {
+            slot.writeLast(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            // 有处理中的请求时不关闭
+            if (pipelineSequencer.getActiveCount() == 0) {
+                HttpConnectionManager.idleClosed();
+                logger.info("连接空闲{}，关闭连接 : {}", ((IdleStateEvent) evt).state(), ctx.channel().remoteAddress());
+                ctx.close();
+            }
+            return;
+        }
+        if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent) {
+            // h2c 升级请求作为 stream 1 处理
+            FullHttpRequest request = ((HttpServerUpgradeHandler.UpgradeEvent) evt).upgradeRequest().retainedDuplicate();
+            Http2ServerHandler.setStreamId(request.headers(), 1);
+            channelRead(ctx, request);
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            writabilityMonitor.signalAll();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         String errMsg = "exceptionCaught: " + ObjUtils.ifNull(cause.getMessage(), "");
@@ -179,19 +513,64 @@ public class HttpChannelHandler extends SimpleChannelInboundHandler<FullHttpRequ
         return null;
     }
 
+    /**
+     * 匹配的路由模式，没有匹配时返回 null
+     */
+    protected String getRoute(HttpRequest httpRequest) {
+        return (String) httpRequest.getAttribute(HttpConstant.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    }
+
     /**
      * 处理返回结果
      *
      * @param ctx
+     * @param task
+     * @param httpRequest
+     * @param httpResponse
      */
-    protected void handleHttpResponse(ChannelHandlerContext ctx, HttpRequest httpRequest, HttpResponse httpResponse) {
-        if (HttpUtil.isKeepAlive(httpRequest.getFullHttpRequest())) {
+    protected void handleHttpResponse(ChannelHandlerContext ctx, HttpTask task, HttpRequest httpRequest, HttpResponse httpResponse) throws IOException {
+        if (!task.complete()) {
+            logger.warn("请求执行超时，不再输出结果");
+            if (HttpConstant.SWIFT_ACCESS_LOG_ASYNC) {
+                HttpAccessLog.log(httpRequest, null, HttpResponseStatus.GATEWAY_TIMEOUT.code(),
+                        System.currentTimeMillis() - task.getCreateTime(), task.getLogSampleRate());
+            }
+            HttpMetrics.record(getRoute(httpRequest), httpRequest.getMethod(), HttpResponseStatus.GATEWAY_TIMEOUT.code(),
+                    task.getQueueNanos(), task.getRunNanos(), -1);
+            return;
+        }
+        long queueNanos = task.getQueueNanos();
+        long handlerNanos = task.getRunNanos();
+        boolean keepAlive = HttpUtil.isKeepAlive(httpRequest.getFullHttpRequest());
+        if (keepAlive) {
             httpResponse.setHeader(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
-            ctx.writeAndFlush(httpResponse.getFullHttpResponse());
+        }
+        // 输出前记录，返回头不会再被 netty 线程修改
+        if (HttpConstant.SWIFT_ACCESS_LOG_ASYNC) {
+            HttpAccessLog.log(httpRequest, httpResponse, httpResponse.getStatus().code(),
+                    System.currentTimeMillis() - task.getCreateTime(), task.getLogSampleRate());
+        }
+        long writeStart = System.nanoTime();
+        ChannelFuture future;
+        if (httpResponse.isChunked()) {
+            future = httpResponse.getChunkedWriter().finish();
+        } else if (httpResponse.getFile() != null) {
+            future = HttpFileWriter.write(ctx, task.getSlot(), httpRequest, httpResponse);
         } else {
-            ctx.writeAndFlush(httpResponse.getFullHttpResponse()).addListener(ChannelFutureListener.CLOSE);
+            future = task.getSlot().writeLast(httpResponse.getFullHttpResponse());
+        }
+        if (!keepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+        if (HttpConstant.SWIFT_METRICS_ENABLED) {
+            String route = getRoute(httpRequest);
+            String method = httpRequest.getMethod();
+            int status = httpResponse.getStatus().code();
+            future.addListener(f -> HttpMetrics.record(route, method, status, queueNanos, handlerNanos, System.nanoTime() - writeStart));
+        }
+        if (!HttpConstant.SWIFT_ACCESS_LOG_ASYNC) {
+            httpResponse.logResponse();
         }
-        httpResponse.logResponse();
     }
 
 }
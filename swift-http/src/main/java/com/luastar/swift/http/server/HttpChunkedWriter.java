@@ -0,0 +1,272 @@
+package com.luastar.swift.http.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.Http2Error;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 分块输出（Transfer-Encoding: chunked）
+ * <p>
+ * 在业务处理过程中边生成边输出，每满 chunkSize 字节输出一个 HttpContent，结束时输出 LastHttpContent。
+ * 当连接不可写（超过 WRITE_BUFFER_WATER_MARK 高水位）时阻塞业务线程，直到连接恢复可写，
+ * 慢速客户端会限制生产速度，不会在内存中无限缓存。
+ * 管道化请求没有轮到输出时同样等待，前面的请求输出完成后再继续生产。
+ * <p>
+ * 通过 {@link HttpResponse#getChunkedWriter()} 获取，非线程安全
+ */
+public class HttpChunkedWriter extends OutputStream {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /**
+     * 等待可写的最长间隔，防止错过通知
+     */
+    private static final long WRITABILITY_WAIT_MILLIS = 100;
+
+    private final ChannelHandlerContext ctx;
+
+    private final HttpPipelineSequencer.Slot slot;
+
+    private final HttpResponse httpResponse;
+
+    /**
+     * 连接恢复可写时由 HttpChannelHandler 通知
+     */
+    private final HttpWritabilityMonitor writabilityMonitor;
+
+    private final int chunkSize;
+
+    private ByteBuf buffer;
+
+    private boolean headWritten = false;
+
+    private boolean closed = false;
+
+    private ChannelFuture lastFuture;
+
+    /**
+     * http2 请求的 stream id
+     */
+    private Integer streamId;
+
+    public HttpChunkedWriter(ChannelHandlerContext ctx, HttpPipelineSequencer.Slot slot, HttpResponse httpResponse, HttpWritabilityMonitor writabilityMonitor) {
+        this(ctx, slot, httpResponse, writabilityMonitor, DEFAULT_CHUNK_SIZE);
+    }
+
+    public HttpChunkedWriter(ChannelHandlerContext ctx, HttpPipelineSequencer.Slot slot, HttpResponse httpResponse, HttpWritabilityMonitor writabilityMonitor, int chunkSize) {
+        if (ctx == null || slot == null) {
+            throw new IllegalArgumentException("ctx和slot不能为空！");
+        }
+        this.ctx = ctx;
+        this.slot = slot;
+        this.httpResponse = httpResponse;
+        this.writabilityMonitor = writabilityMonitor != null ? writabilityMonitor : new HttpWritabilityMonitor();
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        ensureBuffer();
+        buffer.writeByte(b);
+        if (!buffer.isWritable()) {
+            flushChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            ensureBuffer();
+            int size = Math.min(len, buffer.writableBytes());
+            buffer.writeBytes(b, off, size);
+            off += size;
+            len -= size;
+            if (!buffer.isWritable()) {
+                flushChunk();
+            }
+        }
+    }
+
+    /**
+     * 以 UTF-8 编码写入分块缓存，满 chunkSize 时输出
+     * <p>
+     * 每个字符最多编码为 3 个字节（代理对 2 个字符 4 个字节），按剩余空间分段编码，代理对不拆开
+     *
+     * @param str
+     * @throws IOException
+     */
+    public void write(CharSequence str) throws IOException {
+        ensureOpen();
+        if (str == null || str.length() == 0) {
+            return;
+        }
+        int length = str.length();
+        int start = 0;
+        while (start < length) {
+            ensureBuffer();
+            int end = Math.min(length, start + buffer.writableBytes() / 3);
+            if (end < length && end > start && Character.isHighSurrogate(str.charAt(end - 1))) {
+                end--;
+            }
+            if (end == start) {
+                flushChunk();
+                continue;
+            }
+            ByteBufUtil.writeUtf8(buffer, start == 0 && end == length ? str : str.subSequence(start, end));
+            start = end;
+            if (!buffer.isWritable()) {
+                flushChunk();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushChunk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    /**
+     * 是否已经输出
+     */
+    public boolean isCommitted() {
+        return headWritten;
+    }
+
+    /**
+     * 输出剩余内容和 LastHttpContent，可以重复调用
+     *
+     * @return 最后一次写操作的 future
+     */
+    public ChannelFuture finish() throws IOException {
+        if (!isOpen()) {
+            return lastFuture;
+        }
+        flushChunk();
+        writeHead();
+        if (streamId != null) {
+            lastFuture = slot.writeLast(new Http2StreamContent(streamId, Unpooled.EMPTY_BUFFER, true));
+        } else {
+            lastFuture = slot.writeLast(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        closed = true;
+        return lastFuture;
+    }
+
+    /**
+     * 中止已经开始的输出，不输出 LastHttpContent，客户端不会把截断的内容当成完整的返回：
+     * http2 重置当前 stream，http1.1 只能关闭连接
+     */
+    public void abort() {
+        boolean committed = headWritten && !closed;
+        release();
+        if (!committed) {
+            return;
+        }
+        if (streamId != null) {
+            lastFuture = slot.writeLast(new Http2StreamReset(streamId, Http2Error.INTERNAL_ERROR));
+        } else {
+            ctx.close();
+        }
+    }
+
+    /**
+     * 释放未输出的缓存
+     */
+    public void release() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+        closed = true;
+    }
+
+    private boolean isOpen() {
+        return !closed;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("chunked writer is closed");
+        }
+    }
+
+    private void ensureBuffer() {
+        if (buffer == null) {
+            buffer = ctx.alloc().buffer(chunkSize, chunkSize);
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        writeHead();
+        if (buffer == null) {
+            return;
+        }
+        if (!buffer.isReadable()) {
+            buffer.release();
+            buffer = null;
+            return;
+        }
+        awaitWritable();
+        ByteBuf chunk = buffer;
+        buffer = null;
+        lastFuture = slot.writeAndFlush(newContent(chunk));
+    }
+
+    private HttpContent newContent(ByteBuf content) {
+        if (streamId != null) {
+            return new Http2StreamContent(streamId, content, false);
+        }
+        return new DefaultHttpContent(content);
+    }
+
+    private void writeHead() {
+        if (headWritten) {
+            return;
+        }
+        headWritten = true;
+        streamId = Http2ServerHandler.getStreamId(httpResponse.getHeaders());
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, httpResponse.getStatus());
+        response.headers().set(httpResponse.getHeaders());
+        response.headers().remove(HttpHeaderNames.CONTENT_LENGTH);
+        HttpUtil.setTransferEncodingChunked(response, true);
+        lastFuture = slot.write(response);
+    }
+
+    /**
+     * 连接不可写或者没有轮到输出时阻塞等待，在 worker-group 线程中不等待
+     */
+    private void awaitWritable() throws IOException {
+        if (ctx.executor().inEventLoop()) {
+            return;
+        }
+        while (!ctx.channel().isWritable() || !slot.isCurrent()) {
+            if (!ctx.channel().isActive()) {
+                release();
+                throw new IOException("channel is closed");
+            }
+            try {
+                writabilityMonitor.await(WRITABILITY_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                release();
+                throw new IOException("interrupted while waiting for channel writability", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 返回结果压缩，在 HttpContentCompressor 基础上跳过不需要压缩的结果：
+ * <p>
+ * 1. 已经设置 Content-Encoding（包括 identity）的不压缩.
+ * <p>
+ * 2. Content-Length 小于 swift.compression.minLength 的不压缩，分块输出长度未知时压缩.
+ * <p>
+ * 3. Content-Type 不在 swift.compression.mimeTypes 中的不压缩，例如 zip、xlsx、png 等已经压缩过的文件.
+ * <p>
+ * 4. 区间输出（206 或者有 Content-Range）不压缩，区间按未压缩的内容计算.
+ */
+public class HttpCompressor extends HttpContentCompressor {
+
+    private static final String[] MIME_TYPES = StringUtils.split(StringUtils.deleteWhitespace(HttpConstant.SWIFT_COMPRESSION_MIME_TYPES), ',');
+
+    public HttpCompressor(int compressionLevel) {
+        super(compressionLevel);
+    }
+
+    @Override
+    protected Result beginEncode(io.netty.handler.codec.http.HttpResponse response, String acceptEncoding) throws Exception {
+        if (!isCompressible(response)) {
+            return null;
+        }
+        return super.beginEncode(response, acceptEncoding);
+    }
+
+    /**
+     * 根据返回头判断是否需要压缩
+     *
+     * @param message
+     * @return
+     */
+    public static boolean isCompressible(HttpMessage message) {
+        HttpHeaders headers = message.headers();
+        if (headers.contains(HttpHeaderNames.CONTENT_ENCODING) || headers.contains(HttpHeaderNames.CONTENT_RANGE)) {
+            return false;
+        }
+        if (message instanceof io.netty.handler.codec.http.HttpResponse
+                && HttpResponseStatus.PARTIAL_CONTENT.equals(((io.netty.handler.codec.http.HttpResponse) message).status())) {
+            return false;
+        }
+        long contentLength = HttpUtil.getContentLength(message, -1L);
+        if (contentLength >= 0 && contentLength < HttpConstant.SWIFT_COMPRESSION_MIN_LENGTH) {
+            return false;
+        }
+        return isCompressibleType(headers.get(HttpHeaderNames.CONTENT_TYPE));
+    }
+
+    /**
+     * 没有 Content-Type 时不压缩
+     *
+     * @param contentType
+     * @return
+     */
+    public static boolean isCompressibleType(String contentType) {
+        if (StringUtils.isEmpty(contentType)) {
+            return false;
+        }
+        for (String mimeType : MIME_TYPES) {
+            if (StringUtils.startsWithIgnoreCase(contentType, mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应并发限制（AIMD）
+ * <p>
+ * 请求进入业务线程池前获取许可，超过并发上限时直接在 worker-group 线程中返回 503。
+ * 请求完成时根据耗时调整上限：耗时超过阈值或者超时时按比例减小（乘性减），
+ * 否则在并发达到上限一半以上时加 1（加性增），上限在 [minLimit, maxLimit] 之间变化。
+ * 流量突增时排队长度和尾延迟保持在有限范围内。
+ */
+public class HttpConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpConcurrencyLimiter.class);
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    /**
+     * 耗时阈值（毫秒）
+     */
+    private final long latencyThreshold;
+
+    private final double backoffRatio;
+
+    private final AtomicInteger limit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public HttpConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThreshold, double backoffRatio) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("并发上限配置错误，minLimit:" + minLimit + "，maxLimit:" + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio 必须在 (0, 1) 之间：" + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThreshold = latencyThreshold;
+        this.backoffRatio = backoffRatio;
+        this.limit = new AtomicInteger(Math.min(Math.max(initialLimit, minLimit), maxLimit));
+    }
+
+    /**
+     * 根据配置创建，未开启时返回 null
+     *
+     * @return
+     */
+    public static HttpConcurrencyLimiter create() {
+        if (!HttpConstant.SWIFT_LIMIT_ENABLED) {
+            return null;
+        }
+        logger.info("开启自适应并发限制，初始上限:{}，范围:[{}, {}]，耗时阈值:{}毫秒，减小比例:{}",
+                HttpConstant.SWIFT_LIMIT_INITIAL,
+                HttpConstant.SWIFT_LIMIT_MIN,
+                HttpConstant.SWIFT_LIMIT_MAX,
+                HttpConstant.SWIFT_LIMIT_LATENCY,
+                HttpConstant.SWIFT_LIMIT_BACKOFF_RATIO);
+        return new HttpConcurrencyLimiter(HttpConstant.SWIFT_LIMIT_INITIAL,
+                HttpConstant.SWIFT_LIMIT_MIN,
+                HttpConstant.SWIFT_LIMIT_MAX,
+                HttpConstant.SWIFT_LIMIT_LATENCY,
+                HttpConstant.SWIFT_LIMIT_BACKOFF_RATIO);
+    }
+
+    /**
+     * 获取许可，超过上限返回 false
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放许可并调整上限
+     *
+     * @param latencyMillis 请求耗时（包含排队时间）
+     * @param dropped       是否超时或者被拒绝
+     */
+    public void release(long latencyMillis, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        if (dropped || latencyMillis > latencyThreshold) {
+            int newLimit = limit.updateAndGet(l -> Math.max(minLimit, (int) (l * backoffRatio)));
+            logger.debug("并发上限减小为:{}，耗时:{}毫秒", newLimit, latencyMillis);
+        } else if (current * 2 >= limit.get()) {
+            limit.updateAndGet(l -> Math.min(maxLimit, l + 1));
+        }
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接管理
+ * <p>
+ * 1. 接收连接时检查总连接数（swift.connection.max）和单个 ip 的连接数（swift.connection.maxPerIp），超过直接关闭.
+ * <p>
+ * 2. 统计空闲关闭、读取超时关闭和达到最大请求数后回收的连接数.
+ */
+public class HttpConnectionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpConnectionManager.class);
+
+    private static final AtomicInteger connectionCount = new AtomicInteger();
+
+    /**
+     * 每个 ip 的连接数，只在限制单个 ip 连接数时统计
+     */
+    private static final ConcurrentMap<String, Integer> ipConnectionCount = new ConcurrentHashMap<>();
+
+    private static final AtomicLong rejectedCount = new AtomicLong();
+
+    private static final AtomicLong idleClosedCount = new AtomicLong();
+
+    private static final AtomicLong readTimeoutCount = new AtomicLong();
+
+    private static final AtomicLong recycledCount = new AtomicLong();
+
+    private HttpConnectionManager() {
+    }
+
+    /**
+     * 新连接，超过限制时返回 false，连接关闭时自动释放
+     *
+     * @param channel
+     * @return
+     */
+    public static boolean tryAcquire(Channel channel) {
+        int count = connectionCount.incrementAndGet();
+        if (HttpConstant.SWIFT_CONNECTION_MAX > 0 && count > HttpConstant.SWIFT_CONNECTION_MAX) {
+            connectionCount.decrementAndGet();
+            logger.warn("连接数超过{}，拒绝连接 : {}", HttpConstant.SWIFT_CONNECTION_MAX, channel.remoteAddress());
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        String ip = HttpConstant.SWIFT_CONNECTION_MAX_PER_IP > 0 ? getIp(channel) : null;
+        if (ip != null && ipConnectionCount.merge(ip, 1, Integer::sum) > HttpConstant.SWIFT_CONNECTION_MAX_PER_IP) {
+            release(ip);
+            logger.warn("ip连接数超过{}，拒绝连接 : {}", HttpConstant.SWIFT_CONNECTION_MAX_PER_IP, ip);
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        channel.closeFuture().addListener(future -> release(ip));
+        return true;
+    }
+
+    private static void release(String ip) {
+        connectionCount.decrementAndGet();
+        if (ip != null) {
+            ipConnectionCount.computeIfPresent(ip, (key, value) -> value > 1 ? value - 1 : null);
+        }
+    }
+
+    private static String getIp(Channel channel) {
+        SocketAddress socketAddress = channel.remoteAddress();
+        if (socketAddress instanceof InetSocketAddress) {
+            return ((InetSocketAddress) socketAddress).getAddress().getHostAddress();
+        }
+        return null;
+    }
+
+    static void idleClosed() {
+        idleClosedCount.incrementAndGet();
+    }
+
+    static void readTimeout() {
+        readTimeoutCount.incrementAndGet();
+    }
+
+    static void recycled() {
+        recycledCount.incrementAndGet();
+    }
+
+    /**
+     * 当前连接数
+     */
+    public static int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * 当前有连接的 ip 数，不限制单个 ip 连接数时为 0
+     */
+    public static int getIpCount() {
+        return ipConnectionCount.size();
+    }
+
+    /**
+     * 超过连接数限制被拒绝的连接数
+     */
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 空闲超时关闭的连接数
+     */
+    public static long getIdleClosedCount() {
+        return idleClosedCount.get();
+    }
+
+    /**
+     * 读取请求超时关闭的连接数
+     */
+    public static long getReadTimeoutCount() {
+        return readTimeoutCount.get();
+    }
+
+    /**
+     * 达到最大请求数后关闭的连接数
+     */
+    public static long getRecycledCount() {
+        return recycledCount.get();
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+/**
+ * 文件输出
+ * 开启 swift.compression.precompressed 时优先输出同名的 .gz 文件
+ * 没有 ssl、http2 和压缩时使用 DefaultFileRegion（sendfile）零拷贝输出，否则使用 ChunkedNioFile 分块输出
+ * 支持单个区间的 Range/If-Range 请求，不需要把文件读入内存
+ * 通过 {@link HttpPipelineSequencer.Slot} 输出，管道化请求按顺序输出
+ */
+public class HttpFileWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpFileWriter.class);
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private HttpFileWriter() {
+    }
+
+    /**
+     * 输出文件
+     *
+     * @param ctx
+     * @param slot
+     * @param httpRequest
+     * @param httpResponse
+     * @return 最后一次写操作的 future
+     */
+    public static ChannelFuture write(ChannelHandlerContext ctx, HttpPipelineSequencer.Slot slot, HttpRequest httpRequest, HttpResponse httpResponse) {
+        File file = httpResponse.getFile();
+        if (!file.isFile() || !file.canRead()) {
+            logger.warn("file not found : {}", file.getAbsolutePath());
+            return writeEmpty(slot, httpResponse, HttpResponseStatus.NOT_FOUND);
+        }
+        if (HttpConstant.SWIFT_COMPRESSION_PRECOMPRESSED) {
+            file = usePrecompressed(httpRequest, httpResponse, file);
+        }
+        long offset = httpResponse.getFileOffset();
+        long length = httpResponse.getFileLength();
+        long lastModified = file.lastModified();
+        httpResponse.setHeader(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        httpResponse.setHeader(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(lastModified)));
+        // 区间请求
+        String range = httpRequest.getFullHttpRequest().headers().get(HttpHeaderNames.RANGE);
+        if (range != null
+                && HttpResponseStatus.OK.equals(httpResponse.getStatus())
+                && isIfRangeMatch(httpRequest.getFullHttpRequest().headers().get(HttpHeaderNames.IF_RANGE), lastModified)) {
+            long[] byteRange = parseRange(range, length);
+            if (byteRange == null) {
+                httpResponse.setHeader(HttpHeaderNames.CONTENT_RANGE, "bytes */" + length);
+                return writeEmpty(slot, httpResponse, HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+            if (byteRange.length == 2) {
+                httpResponse.setStatus(HttpResponseStatus.PARTIAL_CONTENT);
+                // 有 Content-Range 时 HttpCompressor 不再压缩
+                httpResponse.setHeader(HttpHeaderNames.CONTENT_RANGE, "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + length);
+                offset += byteRange[0];
+                length = byteRange[1] - byteRange[0] + 1;
+            }
+        }
+        if (HttpMethod.HEAD.equals(httpRequest.getFullHttpRequest().method())) {
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, httpResponse.getStatus());
+            response.headers().set(httpResponse.getHeaders());
+            HttpUtil.setContentLength(response, length);
+            return slot.writeLast(response);
+        }
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, httpResponse.getStatus());
+        response.headers().set(httpResponse.getHeaders());
+        HttpUtil.setContentLength(response, length);
+        try {
+            if (isChunked(ctx, httpRequest, response)) {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                ChunkedNioFile chunkedFile = new ChunkedNioFile(raf.getChannel(), offset, length, CHUNK_SIZE);
+                Integer streamId = Http2ServerHandler.getStreamId(response.headers());
+                slot.write(response);
+                if (streamId != null) {
+                    return slot.writeLast(new Http2StreamChunkedInput(streamId, chunkedFile));
+                }
+                return slot.writeLast(new HttpChunkedInput(chunkedFile));
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            return writeEmpty(slot, httpResponse, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        }
+        slot.write(response);
+        slot.write(new DefaultFileRegion(file, offset, length));
+        return slot.writeLast(LastHttpContent.EMPTY_LAST_CONTENT);
+    }
+
+    /**
+     * ssl、http2 或者结果需要压缩时不能使用 sendfile
+     */
+    private static boolean isChunked(ChannelHandlerContext ctx, HttpRequest httpRequest, DefaultHttpResponse response) {
+        if (ctx.pipeline().get(SslHandler.class) != null || ctx.pipeline().get(Http2ServerHandler.class) != null) {
+            return true;
+        }
+        if (ctx.pipeline().get(HttpContentCompressor.class) == null
+                || !HttpCompressor.isCompressible(response)) {
+            return false;
+        }
+        String acceptEncoding = httpRequest.getFullHttpRequest().headers().get(HttpHeaderNames.ACCEPT_ENCODING);
+        return StringUtils.containsIgnoreCase(acceptEncoding, HttpHeaderValues.GZIP)
+                || StringUtils.containsIgnoreCase(acceptEncoding, HttpHeaderValues.DEFLATE);
+    }
+
+    /**
+     * 输出整个文件、不是区间请求、客户端支持 gzip 并且存在不早于原文件的 .gz 文件时，改为输出 .gz 文件
+     * <p>
+     * 存在 .gz 文件时，不论是否输出 .gz 文件都返回 Vary: Accept-Encoding，避免缓存混用两种内容
+     */
+    private static File usePrecompressed(HttpRequest httpRequest, HttpResponse httpResponse, File file) {
+        if (httpResponse.getHeaders().contains(HttpHeaderNames.CONTENT_ENCODING)
+                || httpResponse.getFileOffset() != 0
+                || httpResponse.getFileLength() != file.length()) {
+            return file;
+        }
+        File gzFile = new File(file.getPath() + ".gz");
+        if (!gzFile.isFile() || !gzFile.canRead() || gzFile.lastModified() < file.lastModified()) {
+            return file;
+        }
+        httpResponse.addHeader(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        // 区间按原文件计算
+        HttpHeaders headers = httpRequest.getFullHttpRequest().headers();
+        if (headers.contains(HttpHeaderNames.RANGE)
+                || !StringUtils.containsIgnoreCase(headers.get(HttpHeaderNames.ACCEPT_ENCODING), HttpHeaderValues.GZIP)) {
+            return file;
+        }
+        httpResponse.setFile(gzFile);
+        httpResponse.setHeader(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+        return gzFile;
+    }
+
+    /**
+     * If-Range 为空或者与文件最后修改时间一致时区间请求有效
+     */
+    private static boolean isIfRangeMatch(String ifRange, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        Date date = DateFormatter.parseHttpDate(ifRange);
+        return date != null && date.getTime() / 1000 == lastModified / 1000;
+    }
+
+    /**
+     * 解析单个区间 bytes=start-end、bytes=start-、bytes=-suffix
+     *
+     * @return null 表示区间无法满足；长度为 0 表示忽略区间输出整个文件（包括 end 小于 start 的无效区间）；否则为 [start, end]
+     */
+    private static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int index = spec.indexOf('-');
+        if (index < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (index == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, index));
+                end = index == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(index + 1));
+                if (end < start) {
+                    // 无效的区间，按没有 Range 处理
+                    return new long[0];
+                }
+                end = Math.min(end, length - 1);
+            }
+            if (start >= length) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static ChannelFuture writeEmpty(HttpPipelineSequencer.Slot slot, HttpResponse httpResponse, HttpResponseStatus status) {
+        httpResponse.setStatus(status);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set(httpResponse.getHeaders());
+        HttpUtil.setContentLength(response, 0);
+        return slot.writeLast(response);
+    }
+
+}
@@ -0,0 +1,337 @@
+package com.luastar.swift.http.server;
+
+import com.google.common.collect.ImmutableSet;
+import com.luastar.swift.http.constant.HttpConstant;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 请求指标，输出 prometheus 文本格式（/swift/metrics）
+ * <p>
+ * 1. 按路由模式、请求方法和状态码统计耗时直方图：排队（queue）、处理（handler，包括拦截器）、输出（write）和总耗时（request），纳秒计时.
+ * <p>
+ * 2. 输出时读取业务线程池、连接、并发限制、访问日志、netty 内存池和 jvm 堆外内存的当前值.
+ * <p>
+ * 记录时只有一次 ConcurrentHashMap 查询和直方图的原子自增，不加锁。
+ */
+public class HttpMetrics {
+
+    private static final String UNMATCHED = "unmatched";
+
+    private static final String OTHER = "other";
+
+    private static final Set<String> METHODS = ImmutableSet.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "TRACE");
+
+    /**
+     * 最多统计的路由数，防止没有模式的映射按请求地址无限增长
+     */
+    private static final int MAX_SERIES = 10000;
+
+    /**
+     * 输出的 histogram 桶上限（微秒）：100 微秒到 10 秒每个数量级取 1、2、2.5、5、7.5 倍，之后是 20、30、60、120 秒
+     */
+    private static final long[] EXPORT_BOUNDS;
+
+    /**
+     * 桶上限的秒数，输出时直接使用
+     */
+    private static final String[] EXPORT_LABELS;
+
+    static {
+        List<Long> bounds = new ArrayList<>();
+        long[] factors = {10, 20, 25, 50, 75};
+        for (long decade = 10; decade < 1000000; decade *= 10) {
+            for (long factor : factors) {
+                bounds.add(decade * factor);
+            }
+        }
+        for (long seconds : new long[]{10, 20, 30, 60, 120}) {
+            bounds.add(seconds * 1000000);
+        }
+        EXPORT_BOUNDS = new long[bounds.size()];
+        EXPORT_LABELS = new String[bounds.size()];
+        for (int i = 0; i < EXPORT_BOUNDS.length; i++) {
+            EXPORT_BOUNDS[i] = bounds.get(i);
+            EXPORT_LABELS[i] = BigDecimal.valueOf(EXPORT_BOUNDS[i], 6).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private static final ConcurrentMap<RouteKey, RouteMetrics> routeMetrics = new ConcurrentHashMap<>();
+
+    private static volatile HttpConcurrencyLimiter concurrencyLimiter;
+
+    private HttpMetrics() {
+    }
+
+    public static void setConcurrencyLimiter(HttpConcurrencyLimiter limiter) {
+        concurrencyLimiter = limiter;
+    }
+
+    /**
+     * 记录一次请求
+     *
+     * @param route        匹配的路由模式，为空表示没有匹配
+     * @param method
+     * @param status
+     * @param queueNanos   排队时间
+     * @param handlerNanos 处理时间
+     * @param writeNanos   输出时间，小于 0 表示没有输出，例如执行超时
+     */
+    public static void record(String route, String method, int status, long queueNanos, long handlerNanos, long writeNanos) {
+        if (!HttpConstant.SWIFT_METRICS_ENABLED) {
+            return;
+        }
+        RouteKey key = new RouteKey(route == null ? UNMATCHED : route, METHODS.contains(method) ? method : OTHER, status);
+        RouteMetrics metrics = routeMetrics.get(key);
+        if (metrics == null) {
+            if (routeMetrics.size() >= MAX_SERIES) {
+                key = new RouteKey(OTHER, key.method, status);
+            }
+            metrics = routeMetrics.computeIfAbsent(key, k -> new RouteMetrics());
+        }
+        long total = queueNanos + handlerNanos;
+        metrics.queue.record(queueNanos);
+        metrics.handler.record(handlerNanos);
+        if (writeNanos >= 0) {
+            metrics.write.record(writeNanos);
+            total += writeNanos;
+        }
+        metrics.request.record(total);
+    }
+
+    /**
+     * prometheus 文本格式（version 0.0.4）
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(8192);
+        List<Map.Entry<RouteKey, RouteMetrics>> routes = new ArrayList<>(routeMetrics.entrySet());
+        histogram(out, "swift_http_request_seconds", "Time from accepting the request to the end of the response write.", routes, metrics -> metrics.request);
+        histogram(out, "swift_http_queue_seconds", "Time the request waited for a business thread.", routes, metrics -> metrics.queue);
+        histogram(out, "swift_http_handler_seconds", "Time spent in interceptors and the handler method.", routes, metrics -> metrics.handler);
+        histogram(out, "swift_http_write_seconds", "Time from starting the response write to its completion.", routes, metrics -> metrics.write);
+        // 业务线程池
+        gauge(out, "swift_business_pool_active_threads", "Business tasks currently running.", HttpThreadPoolExecutor.getActiveCount());
+        gauge(out, "swift_business_pool_threads", "Business pool size.", HttpThreadPoolExecutor.getPoolSize());
+        gauge(out, "swift_business_pool_queue_size", "Business tasks waiting in the queue.", HttpThreadPoolExecutor.getQueueSize());
+        gauge(out, "swift_business_pool_submitted_tasks", "Business tasks submitted and not yet finished.", HttpThreadPoolExecutor.getSubmittedCount());
+        counter(out, "swift_business_pool_completed_tasks_total", "Business tasks completed.", HttpThreadPoolExecutor.getCompletedTaskCount());
+        counter(out, "swift_business_pool_expired_total", "Business tasks answered with 503 because they waited too long in an overloaded queue.", HttpThreadPoolExecutor.getExpiredCount());
+        queueHistogram(out);
+        executorGroups(out);
+        counter(out, "swift_http_timeout_total", "Requests that exceeded the execute timeout.", HttpTask.getTimeoutCount());
+        counter(out, "swift_http_inline_blocking_total", "Inline handlers that ran longer than the blocking threshold.", HttpChannelHandler.getInlineBlockingCount());
+        // 连接
+        gauge(out, "swift_connections", "Open connections.", HttpConnectionManager.getConnectionCount());
+        gauge(out, "swift_connection_ips", "Distinct client ips with open connections (only when maxPerIp is set).", HttpConnectionManager.getIpCount());
+        counter(out, "swift_connection_rejected_total", "Connections rejected by the connection limits.", HttpConnectionManager.getRejectedCount());
+        counter(out, "swift_connection_idle_closed_total", "Connections closed after being idle.", HttpConnectionManager.getIdleClosedCount());
+        counter(out, "swift_connection_read_timeout_total", "Connections closed by the header or body read timeout.", HttpConnectionManager.getReadTimeoutCount());
+        counter(out, "swift_connection_recycled_total", "Connections closed after reaching the max requests per connection.", HttpConnectionManager.getRecycledCount());
+        // 并发限制
+        HttpConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            gauge(out, "swift_limit_concurrency", "Current adaptive concurrency limit.", limiter.getLimit());
+            gauge(out, "swift_limit_in_flight", "Requests currently counted by the limiter.", limiter.getInFlight());
+            counter(out, "swift_limit_rejected_total", "Requests rejected by the concurrency limiter.", limiter.getRejectedCount());
+        }
+        // 访问日志
+        if (HttpConstant.SWIFT_ACCESS_LOG_ASYNC) {
+            counter(out, "swift_access_log_logged_total", "Access log lines written.", HttpAccessLog.getLoggedCount());
+            counter(out, "swift_access_log_dropped_total", "Access log events dropped because the buffer was full.", HttpAccessLog.getDroppedCount());
+            counter(out, "swift_access_log_sampled_out_total", "Requests skipped by access log sampling.", HttpAccessLog.getSampledOutCount());
+            gauge(out, "swift_access_log_pending", "Access log events waiting in the buffer.", HttpAccessLog.getPendingCount());
+        }
+        allocator(out);
+        bufferPools(out);
+        return out.toString();
+    }
+
+    private static void histogram(StringBuilder out, String name, String help,
+                                  List<Map.Entry<RouteKey, RouteMetrics>> routes,
+                                  Function<RouteMetrics, LatencyHistogram> phase) {
+        header(out, name, help, "histogram");
+        for (Map.Entry<RouteKey, RouteMetrics> entry : routes) {
+            series(out, name, entry.getKey().labels(), phase.apply(entry.getValue()));
+        }
+    }
+
+    /**
+     * 业务线程池的排队时间，共享线程池的 group 为 shared
+     */
+    private static void queueHistogram(StringBuilder out) {
+        String name = "swift_business_pool_queue_seconds";
+        header(out, name, "Time tasks waited in the business pool queue (platform threads only).", "histogram");
+        series(out, name, "group=\"shared\"", HttpThreadPoolExecutor.getQueueTimeHistogram());
+        for (HttpThreadPoolExecutor.ExecutorGroup group : HttpThreadPoolExecutor.getGroups()) {
+            series(out, name, "group=\"" + escape(group.getName()) + "\"", group.getQueueTimeHistogram());
+        }
+    }
+
+    private static void series(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        // 先读取各个桶再读取总数，记录的同时输出时总数不会小于累计数
+        long[] counts = histogram.getCumulativeCounts(EXPORT_BOUNDS);
+        long count = histogram.getCount();
+        for (int i = 0; i < counts.length; i++) {
+            out.append(name).append("_bucket{").append(labels).append(",le=\"")
+                    .append(EXPORT_LABELS[i]).append("\"} ").append(counts[i]).append('\n');
+        }
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(histogram.getSum() / 1e9).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+    }
+
+    /**
+     * 业务线程池分组，只在有分组时输出
+     */
+    private static void executorGroups(StringBuilder out) {
+        List<HttpThreadPoolExecutor.ExecutorGroup> groups = new ArrayList<>(HttpThreadPoolExecutor.getGroups());
+        if (groups.isEmpty()) {
+            return;
+        }
+        group(out, "swift_group_max_concurrency", "Max concurrency of the executor group.", "gauge", groups, HttpThreadPoolExecutor.ExecutorGroup::getMaxConcurrency);
+        group(out, "swift_group_active_threads", "Tasks currently running in the executor group.", "gauge", groups, HttpThreadPoolExecutor.ExecutorGroup::getActiveCount);
+        group(out, "swift_group_queue_size", "Tasks waiting in the executor group queue.", "gauge", groups, HttpThreadPoolExecutor.ExecutorGroup::getQueueSize);
+        group(out, "swift_group_queue_capacity", "Queue capacity of the executor group.", "gauge", groups, HttpThreadPoolExecutor.ExecutorGroup::getMaxQueueSize);
+        group(out, "swift_group_completed_tasks_total", "Tasks completed in the executor group.", "counter", groups, HttpThreadPoolExecutor.ExecutorGroup::getCompletedTaskCount);
+        group(out, "swift_group_expired_total", "Tasks answered with 503 because they waited too long in the overloaded executor group queue.", "counter", groups, HttpThreadPoolExecutor.ExecutorGroup::getExpiredCount);
+        group(out, "swift_group_rejected_total", "Tasks rejected because the executor group was full.", "counter", groups, HttpThreadPoolExecutor.ExecutorGroup::getRejectedCount);
+        group(out, "swift_group_shared_total", "Tasks run in the shared business pool because the executor group was full.", "counter", groups, HttpThreadPoolExecutor.ExecutorGroup::getSharedCount);
+    }
+
+    private static void group(StringBuilder out, String name, String help, String type,
+                              List<HttpThreadPoolExecutor.ExecutorGroup> groups,
+                              ToLongFunction<HttpThreadPoolExecutor.ExecutorGroup> value) {
+        header(out, name, help, type);
+        for (HttpThreadPoolExecutor.ExecutorGroup group : groups) {
+            out.append(name).append("{group=\"").append(escape(group.getName())).append("\"} ").append(value.applyAsLong(group)).append('\n');
+        }
+    }
+
+    /**
+     * netty 内存池，只在使用 PooledByteBufAllocator 时输出
+     */
+    private static void allocator(StringBuilder out) {
+        if (!(ByteBufAllocator.DEFAULT instanceof PooledByteBufAllocator)) {
+            return;
+        }
+        PooledByteBufAllocatorMetric metric = ((PooledByteBufAllocator) ByteBufAllocator.DEFAULT).metric();
+        gauge(out, "swift_netty_pooled_used_heap_bytes", "Heap memory reserved by the netty pooled allocator.", metric.usedHeapMemory());
+        gauge(out, "swift_netty_pooled_used_direct_bytes", "Direct memory reserved by the netty pooled allocator.", metric.usedDirectMemory());
+        gauge(out, "swift_netty_pooled_thread_local_caches", "Thread local caches of the netty pooled allocator.", metric.numThreadLocalCaches());
+        gauge(out, "swift_netty_pooled_chunk_size_bytes", "Chunk size of the netty pooled allocator.", metric.chunkSize());
+        arena(out, "swift_netty_arena_active_bytes", "Bytes currently allocated from the arena.", metric, PoolArenaMetric::numActiveBytes);
+        arena(out, "swift_netty_arena_active_allocations", "Buffers currently allocated from the arena.", metric, PoolArenaMetric::numActiveAllocations);
+        arena(out, "swift_netty_arena_thread_caches", "Thread caches bound to the arena.", metric, PoolArenaMetric::numThreadCaches);
+    }
+
+    private static void arena(StringBuilder out, String name, String help, PooledByteBufAllocatorMetric metric, ToLongFunction<PoolArenaMetric> value) {
+        header(out, name, help, "gauge");
+        List<PoolArenaMetric> heapArenas = metric.heapArenas();
+        for (int i = 0; i < heapArenas.size(); i++) {
+            out.append(name).append("{type=\"heap\",arena=\"").append(i).append("\"} ").append(value.applyAsLong(heapArenas.get(i))).append('\n');
+        }
+        List<PoolArenaMetric> directArenas = metric.directArenas();
+        for (int i = 0; i < directArenas.size(); i++) {
+            out.append(name).append("{type=\"direct\",arena=\"").append(i).append("\"} ").append(value.applyAsLong(directArenas.get(i))).append('\n');
+        }
+    }
+
+    /**
+     * jvm 的 direct 和 mapped 缓冲区
+     */
+    private static void bufferPools(StringBuilder out) {
+        List<BufferPoolMXBean> pools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+        header(out, "swift_jvm_buffer_pool_used_bytes", "Memory used by the jvm buffer pool.", "gauge");
+        for (BufferPoolMXBean pool : pools) {
+            out.append("swift_jvm_buffer_pool_used_bytes{pool=\"").append(escape(pool.getName())).append("\"} ").append(pool.getMemoryUsed()).append('\n');
+        }
+        header(out, "swift_jvm_buffer_pool_capacity_bytes", "Total capacity of the buffers in the jvm buffer pool.", "gauge");
+        for (BufferPoolMXBean pool : pools) {
+            out.append("swift_jvm_buffer_pool_capacity_bytes{pool=\"").append(escape(pool.getName())).append("\"} ").append(pool.getTotalCapacity()).append('\n');
+        }
+        header(out, "swift_jvm_buffer_pool_buffers", "Buffers in the jvm buffer pool.", "gauge");
+        for (BufferPoolMXBean pool : pools) {
+            out.append("swift_jvm_buffer_pool_buffers{pool=\"").append(escape(pool.getName())).append("\"} ").append(pool.getCount()).append('\n');
+        }
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class RouteKey {
+
+        private final String route;
+        private final String method;
+        private final int status;
+        private final int hash;
+
+        private RouteKey(String route, String method, int status) {
+            this.route = route;
+            this.method = method;
+            this.status = status;
+            this.hash = 31 * (31 * route.hashCode() + method.hashCode()) + status;
+        }
+
+        private String labels() {
+            return "route=\"" + escape(route) + "\",method=\"" + method + "\",status=\"" + status + "\"";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RouteKey)) {
+                return false;
+            }
+            RouteKey other = (RouteKey) o;
+            return status == other.status && route.equals(other.route) && method.equals(other.method);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    private static class RouteMetrics {
+
+        private final LatencyHistogram request = new LatencyHistogram();
+        private final LatencyHistogram queue = new LatencyHistogram();
+        private final LatencyHistogram handler = new LatencyHistogram();
+        private final LatencyHistogram write = new LatencyHistogram();
+
+    }
+
+}
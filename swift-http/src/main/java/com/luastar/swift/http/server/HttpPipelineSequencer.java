@@ -0,0 +1,260 @@
+package com.luastar.swift.http.server;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * http1.1 管道化请求按顺序输出，每个连接一个
+ * <p>
+ * 同一连接上连续发送的请求并行提交到业务线程池，每个请求分配一个序号（{@link Slot}），返回结果都通过 Slot 输出：
+ * 轮到的请求直接输出，没轮到的先缓存，前一个请求输出 LastHttpContent 后依次输出缓存的结果。
+ * <p>
+ * 未输出完成的请求数达到 maxDepth 时暂停读取（autoRead = false），小于 maxDepth 后恢复。
+ * <p>
+ * http2 请求按 stream 输出，不需要排序，直接输出。
+ * <p>
+ * 同时统计连接上处理中的请求数（包括 http2），空闲检查时使用。
+ */
+public class HttpPipelineSequencer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpPipelineSequencer.class);
+
+    private final ChannelHandlerContext ctx;
+
+    private final int maxDepth;
+
+    /**
+     * 输出完成后通知等待轮到输出的分块输出
+     */
+    private final HttpWritabilityMonitor writabilityMonitor;
+
+    /**
+     * 以下字段只在 worker-group 线程中修改
+     */
+    private long nextSequence = 0;
+
+    private volatile long writeSequence = 0;
+
+    private final Map<Long, List<PendingWrite>> pendingWrites = new HashMap<>();
+
+    private boolean closed = false;
+
+    /**
+     * 处理中（还没有输出最后一部分）的请求数
+     */
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    /**
+     * @param ctx
+     * @param maxDepth           小于等于 0 表示不限制
+     * @param writabilityMonitor
+     */
+    public HttpPipelineSequencer(ChannelHandlerContext ctx, int maxDepth, HttpWritabilityMonitor writabilityMonitor) {
+        this.ctx = ctx;
+        this.maxDepth = maxDepth;
+        this.writabilityMonitor = writabilityMonitor;
+    }
+
+    /**
+     * 为请求分配序号，在 worker-group 线程中按请求顺序调用
+     *
+     * @param fullHttpRequest
+     * @return
+     */
+    public Slot next(FullHttpRequest fullHttpRequest) {
+        activeCount.incrementAndGet();
+        if (Http2ServerHandler.getStreamId(fullHttpRequest.headers()) != null) {
+            return new Slot(-1);
+        }
+        Slot slot = new Slot(nextSequence++);
+        if (maxDepth > 0 && nextSequence - writeSequence >= maxDepth && ctx.channel().config().isAutoRead()) {
+            logger.debug("管道化请求数达到{}，暂停读取", maxDepth);
+            ctx.channel().config().setAutoRead(false);
+        }
+        return slot;
+    }
+
+    /**
+     * 未输出完成的请求数
+     */
+    public int getDepth() {
+        return (int) (nextSequence - writeSequence);
+    }
+
+    /**
+     * 处理中的请求数
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * 连接关闭时释放缓存的结果
+     */
+    public void close() {
+        if (!ctx.executor().inEventLoop()) {
+            ctx.executor().execute(this::close);
+            return;
+        }
+        closed = true;
+        for (List<PendingWrite> writes : pendingWrites.values()) {
+            for (PendingWrite write : writes) {
+                write.discard();
+            }
+        }
+        pendingWrites.clear();
+    }
+
+    private void write(long sequence, Object msg, boolean last, boolean flush, ChannelPromise promise) {
+        if (ctx.executor().inEventLoop()) {
+            doWrite(sequence, msg, last, flush, promise);
+            return;
+        }
+        try {
+            ctx.executor().execute(() -> doWrite(sequence, msg, last, flush, promise));
+        } catch (RejectedExecutionException e) {
+            new PendingWrite(msg, last, promise).discard();
+        }
+    }
+
+    private void doWrite(long sequence, Object msg, boolean last, boolean flush, ChannelPromise promise) {
+        if (closed || sequence < writeSequence) {
+            new PendingWrite(msg, last, promise).discard();
+            return;
+        }
+        if (sequence > writeSequence) {
+            pendingWrites.computeIfAbsent(sequence, k -> new ArrayList<>()).add(new PendingWrite(msg, last, promise));
+            return;
+        }
+        ctx.write(msg, promise);
+        if (last) {
+            complete();
+        } else if (flush) {
+            ctx.flush();
+        }
+    }
+
+    /**
+     * 当前请求输出完成，依次输出后面已经缓存的结果
+     */
+    private void complete() {
+        boolean done = true;
+        while (done) {
+            writeSequence++;
+            done = false;
+            List<PendingWrite> writes = pendingWrites.remove(writeSequence);
+            if (writes == null) {
+                break;
+            }
+            for (PendingWrite write : writes) {
+                ctx.write(write.msg, write.promise);
+                done |= write.last;
+            }
+        }
+        ctx.flush();
+        writabilityMonitor.signalAll();
+        if (!ctx.channel().config().isAutoRead() && (maxDepth <= 0 || nextSequence - writeSequence < maxDepth)) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    /**
+     * 一个请求的输出，可以在任意线程中调用，同一个请求的多次输出保持调用顺序
+     */
+    public class Slot {
+
+        private final long sequence;
+
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * 输出但不刷新
+         */
+        public ChannelFuture write(Object msg) {
+            return write(msg, false, false);
+        }
+
+        public ChannelFuture writeAndFlush(Object msg) {
+            return write(msg, false, true);
+        }
+
+        /**
+         * 输出最后一部分并刷新，之后的输出直接丢弃
+         */
+        public ChannelFuture writeLast(Object msg) {
+            return write(msg, true, true);
+        }
+
+        /**
+         * 是否轮到当前请求输出
+         */
+        public boolean isCurrent() {
+            return sequence < 0 || sequence == writeSequence;
+        }
+
+        private ChannelFuture write(Object msg, boolean last, boolean flush) {
+            ChannelPromise promise = ctx.newPromise();
+            if (finished.get() || (last && !finished.compareAndSet(false, true))) {
+                new PendingWrite(msg, last, promise).discard();
+                return promise;
+            }
+            if (last) {
+                activeCount.decrementAndGet();
+            }
+            if (sequence < 0) {
+                return flush ? ctx.writeAndFlush(msg, promise) : ctx.write(msg, promise);
+            }
+            HttpPipelineSequencer.this.write(sequence, msg, last, flush, promise);
+            return promise;
+        }
+
+    }
+
+    private static class PendingWrite {
+
+        private final Object msg;
+
+        private final boolean last;
+
+        private final ChannelPromise promise;
+
+        PendingWrite(Object msg, boolean last, ChannelPromise promise) {
+            this.msg = msg;
+            this.last = last;
+            this.promise = promise;
+        }
+
+        void discard() {
+            if (msg instanceof ChunkedInput) {
+                try {
+                    ((ChunkedInput<?>) msg).close();
+                } catch (Exception e) {
+                    logger.warn("close chunked input error : {}", e.getMessage());
+                }
+            }
+            ReferenceCountUtil.release(msg);
+            promise.tryFailure(new ClosedChannelException());
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.luastar.swift.http.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求读取超时，放在 HttpServerCodec 之后，防止慢速发送请求（slowloris）长时间占用连接
+ * <p>
+ * 收到请求的第一部分数据后开始计时，headerTimeout 秒内没有收到完整的请求头、
+ * 或者收到请求头后 bodyTimeout 秒内没有收到完整的请求体时关闭连接。
+ * 请求之间的空闲时间不计算在内，由 IdleStateHandler 处理。
+ * <p>
+ * 每个连接一个实例，在 worker-group 线程中执行
+ */
+public class HttpReadTimeoutHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpReadTimeoutHandler.class);
+
+    private static final int NONE = 0;
+    private static final int HEADER = 1;
+    private static final int BODY = 2;
+
+    private final int headerTimeout;
+
+    private final int bodyTimeout;
+
+    private int state = NONE;
+
+    /**
+     * 本次读取中有请求读取完成
+     */
+    private boolean completed = false;
+
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * @param headerTimeout 秒，小于等于 0 表示不限制
+     * @param bodyTimeout   秒，小于等于 0 表示不限制
+     */
+    public HttpReadTimeoutHandler(int headerTimeout, int bodyTimeout) {
+        this.headerTimeout = headerTimeout;
+        this.bodyTimeout = bodyTimeout;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof io.netty.handler.codec.http.HttpRequest) {
+            cancel();
+            state = BODY;
+            schedule(ctx, bodyTimeout);
+        }
+        if (msg instanceof LastHttpContent) {
+            cancel();
+            state = NONE;
+            completed = true;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * 每次读取都会触发，没有完整的请求时说明开始读取新请求
+     */
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        if (state == NONE && !completed) {
+            state = HEADER;
+            schedule(ctx, headerTimeout);
+        }
+        completed = false;
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+    }
+
+    private void schedule(ChannelHandlerContext ctx, int seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        int expected = state;
+        timeout = ctx.executor().schedule(() -> {
+            if (state != expected || !ctx.channel().isActive()) {
+                return;
+            }
+            HttpConnectionManager.readTimeout();
+            logger.warn("读取请求{}超过{}秒，关闭连接 : {}", expected == HEADER ? "头" : "体", seconds, ctx.channel().remoteAddress());
+            ctx.close();
+        }, seconds, TimeUnit.SECONDS);
+    }
+
+    private void cancel() {
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.luastar.swift.http.server;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.luastar.swift.base.entity.SwiftHashMap;
@@ -23,9 +24,12 @@ import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.propertyeditors.CustomDateEditor;
 import org.springframework.validation.DataBinder;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -33,6 +37,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * 请求头、cookie、请求参数和上传文件在第一次访问时才解析，没有用到的部分不解析
+ * <p>
+ * 单个请求头直接从 netty 的 HttpHeaders 中读取，调用 getHeaderMap() 或 setHeader() 后才复制一份请求头
+ */
 public class HttpRequest {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpRequest.class);
@@ -57,28 +66,56 @@ public class HttpRequest {
     private QueryStringDecoder queryStringDecoder;
     private HttpPostRequestDecoder postRequestDecoder;
 
-    private Map<String, String> headerMap = new CaseInsensitiveMap<>();
-    private Map<String, Cookie> cookieMap = Maps.newLinkedHashMap();
-    private Map<String, String> parameterMap = Maps.newLinkedHashMap();
-    private Map<String, List<String>> multParameterMap = Maps.newLinkedHashMap();
-    private Map<String, FileUpload> fileMap = Maps.newLinkedHashMap();
+    private Map<String, String> headerMap;
+    private Map<String, Cookie> cookieMap;
+    private Map<String, String> parameterMap;
+    private Map<String, List<String>> multParameterMap;
+    private Map<String, FileUpload> fileMap;
     private Map<String, Object> attributeMap = Maps.newLinkedHashMap();
 
+    /**
+     * 表单请求体已经解析
+     */
+    private boolean bodyDecoded = false;
+
+    /**
+     * 字符串形式的请求体，第一次调用 getBody() 时生成
+     */
+    private String body;
+
     public HttpRequest(FullHttpRequest request, String requestId, String socketIp) {
         this.request = request;
         this.requestId = requestId;
         this.socketIp = socketIp;
-        initRequestHeader();
-        initRequestIp();
-        decodeQueryString();
-        decodeBody();
     }
 
     protected void initRequestHeader() {
+        if (headerMap != null) {
+            return;
+        }
+        headerMap = new CaseInsensitiveMap<>();
         for (Map.Entry<String, String> entry : request.headers()) {
             headerMap.put(entry.getKey(), entry.getValue());
         }
-        String cookieString = request.headers().get(HttpHeaderNames.COOKIE);
+    }
+
+    /**
+     * 只用于输出日志，不缓存
+     */
+    private Map<String, String> copyHeaders() {
+        Map<String, String> headers = Maps.newLinkedHashMap();
+        for (Map.Entry<String, String> entry : request.headers()) {
+            headers.put(entry.getKey(), entry.getValue());
+        }
+        return headers;
+    }
+
+    protected void initRequestCookie() {
+        if (cookieMap != null) {
+            return;
+        }
+        cookieMap = Maps.newLinkedHashMap();
+        String cookieString = getHeader(HttpHeaderNames.COOKIE.toString());
         if (StringUtils.isNotEmpty(cookieString)) {
             Set<Cookie> cookieSet = ServerCookieDecoder.STRICT.decode(cookieString);
             for (Cookie cookie : cookieSet) {
@@ -88,6 +125,9 @@ public class HttpRequest {
     }
 
     protected void initRequestIp() {
+        if (ip != null) {
+            return;
+        }
         String clientIP = request.headers().get("X-Forwarded-For");
         if (ObjUtils.isEmpty(clientIP)) {
             clientIP = request.headers().get("X-Real-IP");
@@ -98,12 +138,32 @@ public class HttpRequest {
         if (ObjUtils.isNotEmpty(clientIP) && StringUtils.contains(clientIP, ",")) {
             clientIP = StringUtils.split(clientIP, ",")[0];
         }
-        this.ip = clientIP;
+        this.ip = ObjUtils.ifNull(clientIP, "");
+    }
+
+    /**
+     * 第一次读取参数或文件时解析地址参数和表单请求体
+     */
+    protected void initParameter() {
+        if (parameterMap != null) {
+            return;
+        }
+        parameterMap = Maps.newLinkedHashMap();
+        multParameterMap = Maps.newLinkedHashMap();
+        fileMap = Maps.newLinkedHashMap();
+        decodeQueryString();
+        decodeBody();
+    }
+
+    protected QueryStringDecoder getQueryStringDecoder() {
+        if (queryStringDecoder == null) {
+            queryStringDecoder = new QueryStringDecoder(getUri());
+        }
+        return queryStringDecoder;
     }
 
     protected void decodeQueryString() {
-        queryStringDecoder = new QueryStringDecoder(getUri());
-        Map<String, List<String>> uriAttributes = queryStringDecoder.parameters();
+        Map<String, List<String>> uriAttributes = getQueryStringDecoder().parameters();
         for (Map.Entry<String, List<String>> attr : uriAttributes.entrySet()) {
             for (String attrVal : attr.getValue()) {
                 parameterMap.put(attr.getKey(), attrVal);
@@ -136,8 +196,21 @@ public class HttpRequest {
      * 解析表单内容的表体
      */
     public void decodeBodyFormData() {
+        initParameter();
+        if (bodyDecoded) {
+            return;
+        }
+        bodyDecoded = true;
         try {
-            postRequestDecoder = new HttpPostRequestDecoder(factory, request);
+            if (request instanceof HttpStreamingRequest) {
+                // 流式接收的请求已经解析完成
+                postRequestDecoder = ((HttpStreamingRequest) request).getPostRequestDecoder();
+                if (postRequestDecoder == null) {
+                    return;
+                }
+            } else {
+                postRequestDecoder = new HttpPostRequestDecoder(factory, request);
+            }
             List<InterfaceHttpData> dataList = postRequestDecoder.getBodyHttpDatas();
             for (InterfaceHttpData data : dataList) {
                 if (data.getHttpDataType() == InterfaceHttpData.HttpDataType.Attribute) {
@@ -163,23 +236,33 @@ public class HttpRequest {
         }
     }
 
-    public void logRequest() {
-        String reqHeaderJson = JSON.toJSONString(getHeaderMap());
+    /**
+     * 请求 ip、地址和方法放到 MDC，异步访问日志不调用 {@link #logRequest()} 时业务日志也能带上
+     */
+    public void putRequestMdc() {
         MDC.put(HttpConstant.MDC_KEY_REQUEST_IP, getIp());
         MDC.put(HttpConstant.MDC_KEY_REQUEST_URI, getUri());
         MDC.put(HttpConstant.MDC_KEY_REQUEST_METHOD, getMethod());
+    }
+
+    public void logRequest() {
+        String reqHeaderJson = JSON.toJSONString(headerMap != null ? headerMap : copyHeaders());
+        putRequestMdc();
         MDC.put(HttpConstant.MDC_KEY_REQUEST_HEADER, reqHeaderJson);
         logger.info("===请求信息开始=========================================================");
         logger.info("== request ip : {}, socketIp : {}", getIp(), getSocketIp());
         logger.info("== request method : {}, uri : {}", getMethod(), getUri());
         logger.info("== request headers : {}", reqHeaderJson);
-        String body = getBody();
-        if (StringUtils.isNotEmpty(body)) {
-            if (body.length() <= HttpConstant.SWIFT_MAX_LOG_LENGTH) {
+        // 按字节判断长度，超长的请求体只截取前面部分放到 MDC，不转成完整的字符串
+        ByteBuf content = request.content();
+        if (content != null && content.isReadable()) {
+            if (content.readableBytes() <= HttpConstant.SWIFT_MAX_LOG_LENGTH) {
+                String body = getBody();
                 MDC.put(HttpConstant.MDC_KEY_REQUEST_BODY, body);
                 logger.info("== request body : {}", body);
             } else {
-                MDC.put(HttpConstant.MDC_KEY_REQUEST_BODY, "request body is too long to log out");
+                int length = HttpAccessLog.truncateLength(content, HttpConstant.SWIFT_MAX_LOG_LENGTH);
+                MDC.put(HttpConstant.MDC_KEY_REQUEST_BODY, content.toString(content.readerIndex(), length, CharsetUtil.UTF_8));
                 logger.info("== request body is too long to log out.");
             }
         }
@@ -199,7 +282,7 @@ public class HttpRequest {
     }
 
     public String getLookupPath() {
-        return queryStringDecoder.path();
+        return getQueryStringDecoder().path();
     }
 
     public String getRequestId() {
@@ -207,7 +290,8 @@ public class HttpRequest {
     }
 
     public String getIp() {
-        return ObjUtils.ifNull(ip, "");
+        initRequestIp();
+        return ip;
     }
 
     public String getSocketIp() {
@@ -219,23 +303,31 @@ public class HttpRequest {
     }
 
     public Map<String, String> getHeaderMap() {
+        initRequestHeader();
         return headerMap;
     }
 
     public String getHeader(String key) {
-        return headerMap.get(key);
+        if (headerMap != null) {
+            return headerMap.get(key);
+        }
+        if (key == null) {
+            return null;
+        }
+        return request.headers().get(key);
     }
 
     public void setHeader(String key, String value) {
-        headerMap.put(key, value);
+        getHeaderMap().put(key, value);
     }
 
     public Map<String, Cookie> getCookieMap() {
+        initRequestCookie();
         return cookieMap;
     }
 
     public String getCookie(String key) {
-        Cookie cookie = cookieMap.get(key);
+        Cookie cookie = getCookieMap().get(key);
         if (cookie == null) {
             return null;
         }
@@ -243,15 +335,17 @@ public class HttpRequest {
     }
 
     public Map<String, String> getParameterMap() {
+        initParameter();
         return parameterMap;
     }
 
     public Map<String, List<String>> getMultParameterMap() {
+        initParameter();
         return multParameterMap;
     }
 
     public String getParameter(String key) {
-        return parameterMap.get(key);
+        return getParameterMap().get(key);
     }
 
     public String getParameter(String key, String defaultValue) {
@@ -263,7 +357,7 @@ public class HttpRequest {
     }
 
     public List<String> getMultParameter(String key) {
-        return multParameterMap.get(key);
+        return getMultParameterMap().get(key);
     }
 
     public List<String> getMultParameter(String key, List<String> defaultValue) {
@@ -307,11 +401,12 @@ public class HttpRequest {
     }
 
     public Map<String, FileUpload> getFileMap() {
+        initParameter();
         return fileMap;
     }
 
     public FileUpload getFile(String key) {
-        return fileMap.get(key);
+        return getFileMap().get(key);
     }
 
     public InputStream getFileInputStream(String key) throws IOException {
@@ -357,22 +452,26 @@ public class HttpRequest {
         return ObjUtils.toLong(getPathValue(key));
     }
 
+    /**
+     * 请求体字符串，只转换一次
+     *
+     * @return
+     */
     public String getBody() {
-        ByteBuf content = request.content();
-        if (content != null) {
-            return content.toString(CharsetUtil.UTF_8);
+        if (body == null) {
+            ByteBuf content = request.content();
+            body = content != null ? content.toString(CharsetUtil.UTF_8) : "";
         }
-        return "";
+        return body;
     }
 
     public <T> T getBodyObject(Class<T> clazz) {
-        String body = getBody();
-        if (ObjUtils.isEmpty(body)) {
+        if (isBodyEmpty()) {
             return null;
         }
         T obj = null;
         try {
-            obj = JSON.parseObject(body, clazz);
+            obj = parseBody(clazz);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
         }
@@ -380,18 +479,50 @@ public class HttpRequest {
     }
 
     public <T> List<T> getBodyArray(Class<T> clazz) {
-        String body = getBody();
-        if (ObjUtils.isEmpty(body)) {
-            return null;
-        }
         try {
-            return JSON.parseArray(body, clazz);
+            return parseBody(new ParameterizedTypeImpl(new Type[]{clazz}, null, List.class));
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             return null;
         }
     }
 
+    /**
+     * 请求体是否为空，不生成字符串
+     */
+    private boolean isBodyEmpty() {
+        if (body != null) {
+            return ObjUtils.isEmpty(body);
+        }
+        ByteBuf content = request.content();
+        return content == null || !content.isReadable();
+    }
+
+    /**
+     * 按 json 解析请求体，已经生成字符串时解析字符串，否则直接解析 ByteBuf 中的字节，不生成字符串
+     * <p>
+     * 堆内存直接使用底层数组，堆外内存或组合 ByteBuf 通过 ByteBufInputStream 读取，使用 fastjson 线程内缓存的字节数组
+     */
+    private <T> T parseBody(Type type) {
+        if (body != null) {
+            return ObjUtils.isEmpty(body) ? null : JSON.parseObject(body, type);
+        }
+        ByteBuf content = request.content();
+        if (content == null || !content.isReadable()) {
+            return null;
+        }
+        int length = content.readableBytes();
+        if (content.hasArray()) {
+            return JSON.parseObject(content.array(), content.arrayOffset() + content.readerIndex(), length, CharsetUtil.UTF_8, type);
+        }
+        // duplicate 不复制数据，读取时不改变请求体的读取位置
+        try (ByteBufInputStream input = new ByteBufInputStream(content.duplicate())) {
+            return JSON.parseObject(input, CharsetUtil.UTF_8, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public SwiftHashMap<String, Object> getBodyMap() {
         return getBodyObject(SwiftHashMap.class);
     }
@@ -404,25 +535,61 @@ public class HttpRequest {
         return null;
     }
 
+    /**
+     * 流式接收的非表单请求体保存的临时文件，请求结束后删除
+     *
+     * @return 非流式请求返回 null
+     */
+    public File getBodyFile() {
+        if (request instanceof HttpStreamingRequest) {
+            return ((HttpStreamingRequest) request).getBodyFile();
+        }
+        return null;
+    }
+
+    /**
+     * 请求体输入流，流式接收的请求从临时文件读取
+     *
+     * @return
+     * @throws IOException
+     */
+    public InputStream getBodyStream() throws IOException {
+        File bodyFile = getBodyFile();
+        if (bodyFile != null) {
+            return new FileInputStream(bodyFile);
+        }
+        return getBodyInputStream();
+    }
+
     public <T> T bindObj(T obj) {
         DataBinder dataBinder = new DataBinder(obj);
         dataBinder.registerCustomEditor(Date.class, new CustomDateEditor(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"), true));
-        dataBinder.bind(new MutablePropertyValues(parameterMap));
+        dataBinder.bind(new MutablePropertyValues(getParameterMap()));
         return ValidateUtils.validate(obj);
     }
 
     public void destroy() {
+        if (request instanceof HttpStreamingRequest) {
+            ((HttpStreamingRequest) request).destroyBody();
+            postRequestDecoder = null;
+        }
         if (postRequestDecoder != null) {
             postRequestDecoder.destroy();
             postRequestDecoder = null;
         }
-        headerMap.clear();
-        cookieMap.clear();
-        parameterMap.clear();
-        multParameterMap.clear();
-        fileMap.clear();
+        clear(headerMap);
+        clear(cookieMap);
+        clear(parameterMap);
+        clear(multParameterMap);
+        clear(fileMap);
         attributeMap.clear();
         request.release();
     }
 
+    private static void clear(Map<?, ?> map) {
+        if (map != null) {
+            map.clear();
+        }
+    }
+
 }
@@ -1,10 +1,15 @@
 package com.luastar.swift.http.server;
 
 import com.alibaba.fastjson.JSON;
+import com.luastar.swift.base.json.JsonUtils;
 import com.luastar.swift.http.constant.HttpConstant;
 import com.luastar.swift.http.constant.HttpMediaType;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
@@ -16,6 +21,10 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 
 public class HttpResponse {
 
@@ -27,8 +36,29 @@ public class HttpResponse {
 
     private ByteArrayOutputStream outputStream;
 
+    /**
+     * 池化的返回内容，通过 {@link #getBodyOutputStream()} 写入
+     */
+    private ByteBuf body;
+
+    private ByteBufOutputStream bodyOutputStream;
+
+    private File file;
+
+    private long fileOffset;
+
+    private long fileLength;
+
     private FullHttpResponse fullHttpResponse;
 
+    private ChannelHandlerContext ctx;
+
+    private HttpPipelineSequencer.Slot slot;
+
+    private HttpWritabilityMonitor writabilityMonitor;
+
+    private HttpChunkedWriter chunkedWriter;
+
     public HttpResponse(String requestId) {
         this.requestId = requestId;
         this.fullHttpResponse = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
@@ -64,9 +94,23 @@ public class HttpResponse {
         logger.info("===返回信息开始=========================================================");
         logger.info("== response status: {}", getStatus());
         logger.info("== response headers : {}", resHeaderJson);
-        String body = getResult();
-        if (StringUtils.isEmpty(body)) {
-            if (getOutputStream() == null) {
+        String result = getResult();
+        if (StringUtils.isEmpty(result)) {
+            if (isChunked()) {
+                MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, "response body is chunked");
+                logger.info("== response body is chunked.");
+            } else if (getFile() != null) {
+                MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, "response body is file");
+                logger.info("== response body is file : {}, offset : {}, length : {}", getFile().getAbsolutePath(), getFileOffset(), getFileLength());
+            } else if (body != null) {
+                String bodyLog = body.toString(body.readerIndex(), HttpAccessLog.truncateLength(body, HttpConstant.SWIFT_MAX_LOG_LENGTH), CharsetUtil.UTF_8);
+                MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, bodyLog);
+                if (body.readableBytes() <= HttpConstant.SWIFT_MAX_LOG_LENGTH) {
+                    logger.info("== response body : {}", bodyLog);
+                } else {
+                    logger.info("== response body is too long to log out.");
+                }
+            } else if (getOutputStream() == null) {
                 MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, "response body is empty");
                 logger.info("== response body is empty.");
             } else {
@@ -74,11 +118,11 @@ public class HttpResponse {
                 logger.info("== response body is stream.");
             }
         } else {
-            if (body.length() <= HttpConstant.SWIFT_MAX_LOG_LENGTH) {
-                MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, body);
-                logger.info("== response body : {}", body);
+            if (result.length() <= HttpConstant.SWIFT_MAX_LOG_LENGTH) {
+                MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, result);
+                logger.info("== response body : {}", result);
             } else {
-                MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, body.substring(0, HttpConstant.SWIFT_MAX_LOG_LENGTH));
+                MDC.put(HttpConstant.MDC_KEY_RESPONSE_BODY, result.substring(0, HttpConstant.SWIFT_MAX_LOG_LENGTH));
                 logger.info("== response body is too long to log out.");
             }
         }
@@ -133,6 +177,13 @@ public class HttpResponse {
         this.result = result;
     }
 
+    /**
+     * getBodyOutputStream() 写入的内容，没有时返回 null
+     */
+    ByteBuf getBody() {
+        return body;
+    }
+
     public ByteArrayOutputStream getOutputStream() {
         return outputStream;
     }
@@ -141,6 +192,143 @@ public class HttpResponse {
         this.outputStream = outputStream;
     }
 
+    /**
+     * 获取返回内容输出流，直接写入连接分配器（池化）的 ByteBuf，不经过 String 和 byte[]
+     * 优先级低于 outputStream，高于 result
+     *
+     * @return
+     */
+    public ByteBufOutputStream getBodyOutputStream() {
+        if (bodyOutputStream == null) {
+            body = alloc().buffer();
+            bodyOutputStream = new ByteBufOutputStream(body);
+        }
+        return bodyOutputStream;
+    }
+
+    /**
+     * 对象序列化成 json 直接写入返回内容，覆盖之前写入的内容
+     * <p>
+     * 序列化失败时丢弃已写入的部分内容并抛出异常，由业务异常处理输出错误结果
+     *
+     * @param obj
+     */
+    public void setResultJson(Object obj) {
+        ByteBufOutputStream out = getBodyOutputStream();
+        body.clear();
+        try {
+            JsonUtils.writeJson(out, obj);
+        } catch (IOException e) {
+            discardBody();
+            throw new UncheckedIOException("返回结果序列化失败", e);
+        } catch (RuntimeException e) {
+            discardBody();
+            throw e;
+        }
+    }
+
+    /**
+     * 丢弃已写入的返回内容，之后输出 result
+     */
+    private void discardBody() {
+        if (body != null) {
+            body.release();
+            body = null;
+            bodyOutputStream = null;
+        }
+    }
+
+    private ByteBufAllocator alloc() {
+        return ctx != null ? ctx.alloc() : ByteBufAllocator.DEFAULT;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFileOffset() {
+        return fileOffset;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * 输出整个文件，文件内容不会读入内存
+     *
+     * @param file
+     */
+    public void setFile(File file) {
+        setFile(file, 0, file.length());
+    }
+
+    /**
+     * 输出文件的一部分，文件内容不会读入内存
+     *
+     * @param file
+     * @param offset 开始位置
+     * @param length 长度
+     */
+    public void setFile(File file, long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset和length不能小于0！");
+        }
+        this.file = file;
+        this.fileOffset = offset;
+        this.fileLength = length;
+    }
+
+    public void setFile(Path path) {
+        setFile(path.toFile());
+    }
+
+    public void setFile(Path path, long offset, long length) {
+        setFile(path.toFile(), offset, length);
+    }
+
+    /**
+     * 设置连接上下文，用于分块输出
+     */
+    void setChannelContext(ChannelHandlerContext ctx, HttpPipelineSequencer.Slot slot, HttpWritabilityMonitor writabilityMonitor) {
+        this.ctx = ctx;
+        this.slot = slot;
+        this.writabilityMonitor = writabilityMonitor;
+    }
+
+    /**
+     * 获取分块输出，获取后 result、outputStream 和 file 不再输出
+     * 使用前先设置状态和返回头，第一次输出后不能再修改
+     *
+     * @return
+     */
+    public HttpChunkedWriter getChunkedWriter() {
+        if (chunkedWriter == null) {
+            if (ctx == null) {
+                throw new IllegalStateException("当前请求不支持分块输出！");
+            }
+            chunkedWriter = new HttpChunkedWriter(ctx, slot, this, writabilityMonitor);
+        }
+        return chunkedWriter;
+    }
+
+    public boolean isChunked() {
+        return chunkedWriter != null;
+    }
+
+    /**
+     * 丢弃还没有开始输出的分块输出，改为输出 result、outputStream 或 file
+     */
+    void discardChunkedWriter() {
+        if (chunkedWriter != null) {
+            if (chunkedWriter.isCommitted()) {
+                throw new IllegalStateException("分块输出已经开始，不能丢弃！");
+            }
+            chunkedWriter.release();
+            chunkedWriter = null;
+        }
+    }
+
     public FullHttpResponse getFullHttpResponse() {
         int contentLength = 0;
         // 输出流
@@ -149,8 +337,14 @@ public class HttpResponse {
             ByteBuf buf = Unpooled.wrappedBuffer(getOutputStream().toByteArray());
             fullHttpResponse = fullHttpResponse.replace(buf);
             contentLength = buf.readableBytes();
+        } else if (body != null) {
+            // 共享内存，输出后由 netty 释放引用，body 在 destroy 中释放
+            ByteBuf buf = body.retainedDuplicate();
+            fullHttpResponse = fullHttpResponse.replace(buf);
+            contentLength = buf.readableBytes();
         } else if (StringUtils.isNotEmpty(getResult())) {
-            ByteBuf buf = Unpooled.copiedBuffer(getResult(), CharsetUtil.UTF_8);
+            // 直接编码到池化 ByteBuf，输出后由 netty 释放
+            ByteBuf buf = ByteBufUtil.writeUtf8(alloc(), getResult());
             fullHttpResponse = fullHttpResponse.replace(buf);
             contentLength = buf.readableBytes();
         }
@@ -160,6 +354,10 @@ public class HttpResponse {
 
     public void destroy() {
         IOUtils.closeQuietly(outputStream);
+        discardBody();
+        if (chunkedWriter != null) {
+            chunkedWriter.release();
+        }
     }
 
 }
@@ -6,23 +6,22 @@ import com.luastar.swift.http.constant.HttpConstant;
 import com.luastar.swift.http.route.HttpHandlerMapping;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.*;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class HttpServer {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpServer.class);
@@ -31,6 +30,10 @@ public class HttpServer {
 
     private boolean ssl = false;
 
+    private SslContext sslContext;
+
+    private HttpConcurrencyLimiter concurrencyLimiter;
+
     private HttpHandlerMapping handlerMapping;
 
     public HttpServer(int port) {
@@ -51,21 +54,41 @@ public class HttpServer {
         logger.info("spring配置文件路径:{}", HttpConstant.SWIFT_CONFIG_LOCATION);
         logger.info("业务执行超时时间:{}秒", HttpConstant.SWIFT_EXECUTE_TIMEOUT);
         logger.info("最大包大小:{}KB, 输出日志大小:{}KB", HttpConstant.SWIFT_MAX_CONTENT_LENGTH / 1024, HttpConstant.SWIFT_MAX_LOG_LENGTH / 1024);
-        logger.info("boss线程数:{}，worker线程数:{}, business线程数:{}", HttpConstant.SWIFT_BOSS_THREADS, HttpConstant.SWIFT_WORKER_THREADS, HttpConstant.SWIFT_BUSINESS_THREADS);
+        logger.info("boss线程数:{}，worker线程数:{}, business线程数:{}，business线程池类型:{}", HttpConstant.SWIFT_BOSS_THREADS, HttpConstant.SWIFT_WORKER_THREADS, HttpConstant.SWIFT_BUSINESS_THREADS, HttpConstant.SWIFT_EXECUTOR);
         logger.info("返回结果压缩级别:{}", HttpConstant.SWIFT_COMPRESSION_LEVEL);
+        logger.info("异步访问日志:{}，缓冲区大小:{}，采样比例:{}，内容最大字节数:{}", HttpConstant.SWIFT_ACCESS_LOG_ASYNC, HttpConstant.SWIFT_ACCESS_LOG_BUFFER_SIZE, HttpConstant.SWIFT_ACCESS_LOG_SAMPLE_RATE, HttpConstant.SWIFT_ACCESS_LOG_MAX_BODY_LENGTH);
+        logger.info("最大连接数:{}，单个ip最大连接数:{}，连接空闲时间:{}秒，每个连接最大请求数:{}", HttpConstant.SWIFT_CONNECTION_MAX, HttpConstant.SWIFT_CONNECTION_MAX_PER_IP, HttpConstant.SWIFT_CONNECTION_ALL_IDLE_TIME, HttpConstant.SWIFT_CONNECTION_MAX_REQUESTS);
+        logger.info("请求头超时时间:{}秒，请求体超时时间:{}秒（0 表示不限制）", HttpConstant.SWIFT_CONNECTION_HEADER_TIMEOUT, HttpConstant.SWIFT_CONNECTION_BODY_TIMEOUT);
         ApplicationContext applicationContext = new ClassPathXmlApplicationContext(HttpConstant.SWIFT_BASE_CONFIG_LOCATION, HttpConstant.SWIFT_CONFIG_LOCATION);
         SpringUtils.setApplicationContext(applicationContext);
         this.handlerMapping = applicationContext.getBean(HttpHandlerMapping.class);
         if (handlerMapping == null) {
             throw new RuntimeException("handlerMapping不能为空!");
         }
+        if (ssl) {
+            try {
+                this.sslContext = HttpSslContext.build();
+            } catch (Exception e) {
+                throw new RuntimeException("初始化ssl失败!", e);
+            }
+        }
+        this.concurrencyLimiter = HttpConcurrencyLimiter.create();
+        HttpMetrics.setConcurrencyLimiter(concurrencyLimiter);
     }
 
     public void start() {
+        // 选择传输层
+        HttpTransport transport = HttpTransport.select();
+        logger.info("传输层:{}，配置:{}，端口绑定次数:{}", transport, HttpConstant.SWIFT_TRANSPORT, transport.bindCount());
         // 设置线程名称
         ThreadFactoryBuilder threadFactoryBuilder = new ThreadFactoryBuilder();
-        EventLoopGroup bossGroup = new NioEventLoopGroup(HttpConstant.SWIFT_BOSS_THREADS, threadFactoryBuilder.setNameFormat("boss-group-%d").build());
-        EventLoopGroup workerGroup = new NioEventLoopGroup(HttpConstant.SWIFT_WORKER_THREADS, threadFactoryBuilder.setNameFormat("worker-group-%d").build());
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(HttpConstant.SWIFT_BOSS_THREADS, threadFactoryBuilder.setNameFormat("boss-group-%d").build());
+        EventLoopGroup workerGroup = transport.newEventLoopGroup(HttpConstant.SWIFT_WORKER_THREADS, threadFactoryBuilder.setNameFormat("worker-group-%d").build());
+        // 流式接收请求体时写入磁盘，不占用 worker-group 线程
+        EventExecutorGroup streamingIoGroup = null;
+        if (handlerMapping.hasStreamingHandler()) {
+            streamingIoGroup = new DefaultEventExecutorGroup(HttpConstant.SWIFT_STREAMING_IO_THREADS, threadFactoryBuilder.setNameFormat("streaming-io-%d").build());
+        }
         /**
          *  备注：
          *  netty推荐耗时业务handler放到单独的线程池
@@ -76,37 +99,34 @@ public class HttpServer {
         try {
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     .handler(new LoggingHandler(LogLevel.INFO))
-                    .childHandler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        protected void initChannel(SocketChannel ch) throws Exception {
-                            ChannelPipeline pipeline = ch.pipeline();
-                            if (ssl) {
-                                SelfSignedCertificate ssc = new SelfSignedCertificate();
-                                SslContext sslContext = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey()).build();
-                                pipeline.addLast(sslContext.newHandler(ch.alloc()));
-                            }
-                            // http request decode and response encode
-                            pipeline.addLast(new HttpServerCodec(HttpConstant.SWIFT_MAX_INITIAL_LINE_LENGTH, HttpConstant.SWIFT_MAX_HEADER_SIZE, HttpConstant.SWIFT_MAX_CHUNK_SIZE));
-                            // 将消息头和体聚合成FullHttpRequest和FullHttpResponse
-                            pipeline.addLast(new HttpObjectAggregator(HttpConstant.SWIFT_MAX_CONTENT_LENGTH));
-                            // 压缩处理
-                            pipeline.addLast(new HttpContentCompressor(HttpConstant.SWIFT_COMPRESSION_LEVEL));
-                            // 自定义http服务
-                            // pipeline.addLast(executorGroup, "http-handler", new HttpChannelHandler(handlerMapping));
-                            pipeline.addLast(new HttpChannelHandler(handlerMapping));
-                        }
-                    });
-            Channel channel = bootstrap.bind(port).sync().channel();
-            channel.closeFuture().sync();
+                    .childHandler(new HttpServerInitializer(handlerMapping, sslContext, concurrencyLimiter, streamingIoGroup));
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                    new WriteBufferWaterMark(HttpConstant.SWIFT_WRITE_BUFFER_LOW_WATER_MARK, HttpConstant.SWIFT_WRITE_BUFFER_HIGH_WATER_MARK));
+            transport.configure(bootstrap);
+            // 开启 SO_REUSEPORT 时绑定多次，每个监听 socket 由一个 boss 线程接收连接
+            List<Channel> channels = new ArrayList<>();
+            for (int i = 0, count = transport.bindCount(); i < count; i++) {
+                channels.add(bootstrap.bind(port).sync().channel());
+            }
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
         } finally {
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
             //executorGroup.shutdownGracefully();
+            if (streamingIoGroup != null) {
+                streamingIoGroup.shutdownGracefully();
+            }
             HttpThreadPoolExecutor.shutdownGracefully();
+            HttpTask.stopTimer();
+            if (HttpConstant.SWIFT_ACCESS_LOG_ASYNC) {
+                HttpAccessLog.stop();
+            }
         }
     }
 
@@ -0,0 +1,167 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import com.luastar.swift.http.route.HttpHandlerMapping;
+import io.netty.channel.*;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * http server 连接初始化
+ * <p>
+ * 接收连接时检查连接数限制，开启空闲检查时最前面添加 IdleStateHandler
+ * <p>
+ * http1.1：HttpServerCodec -> HttpReadTimeoutHandler -> HttpStreamingHandler -> HttpObjectAggregator -> HttpCompressor -> ChunkedWriteHandler -> HttpChannelHandler
+ * <p>
+ * 开启 swift.http2 后：
+ * ssl 连接通过 ALPN 协商 h2 或 http/1.1；非 ssl 连接支持 h2c 升级（Upgrade: h2c）和直接发送 http2 连接序言（prior knowledge）。
+ * http2 连接：Http2ServerHandler -> ChunkedWriteHandler -> HttpChannelHandler，每个 stream 作为一个请求交给业务处理。
+ */
+public class HttpServerInitializer extends ChannelInitializer<SocketChannel> {
+
+    private static final String CHUNKED_WRITER = "chunked-writer";
+
+    private final HttpHandlerMapping handlerMapping;
+
+    private final SslContext sslContext;
+
+    private final HttpConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * 流式接收请求体时写入磁盘的线程，没有流式接收的方法时为空
+     */
+    private final EventExecutorGroup streamingIoGroup;
+
+    public HttpServerInitializer(HttpHandlerMapping handlerMapping, SslContext sslContext, HttpConcurrencyLimiter concurrencyLimiter, EventExecutorGroup streamingIoGroup) {
+        this.handlerMapping = handlerMapping;
+        this.sslContext = sslContext;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.streamingIoGroup = streamingIoGroup;
+    }
+
+    @Override
+    protected void initChannel(SocketChannel ch) throws Exception {
+        if (!HttpConnectionManager.tryAcquire(ch)) {
+            ch.close();
+            return;
+        }
+        ChannelPipeline pipeline = ch.pipeline();
+        if (HttpConstant.SWIFT_CONNECTION_READER_IDLE_TIME > 0
+                || HttpConstant.SWIFT_CONNECTION_WRITER_IDLE_TIME > 0
+                || HttpConstant.SWIFT_CONNECTION_ALL_IDLE_TIME > 0) {
+            // 空闲事件由 HttpChannelHandler 处理
+            pipeline.addLast(new IdleStateHandler(HttpConstant.SWIFT_CONNECTION_READER_IDLE_TIME,
+                    HttpConstant.SWIFT_CONNECTION_WRITER_IDLE_TIME,
+                    HttpConstant.SWIFT_CONNECTION_ALL_IDLE_TIME,
+                    TimeUnit.SECONDS));
+        }
+        if (sslContext != null) {
+            pipeline.addLast(sslContext.newHandler(ch.alloc()));
+        }
+        if (!HttpConstant.SWIFT_HTTP2) {
+            addHttp1Handlers(pipeline);
+        } else if (sslContext != null) {
+            // 握手完成后根据 ALPN 协商结果添加
+            pipeline.addLast(new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+                @Override
+                protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
+                    if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                        ctx.pipeline().addBefore(CHUNKED_WRITER, null, Http2ServerHandler.newHandler());
+                    } else {
+                        addHttp1Handlers(ctx.pipeline(), CHUNKED_WRITER);
+                    }
+                }
+            });
+        } else {
+            HttpServerCodec sourceCodec = newHttpServerCodec();
+            HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, protocol -> {
+                if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                    return new Http2ServerUpgradeCodec(Http2ServerHandler.newHandler());
+                }
+                return null;
+            }, HttpConstant.SWIFT_MAX_CONTENT_LENGTH);
+            pipeline.addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, Http2ServerHandler.newHandler()));
+            pipeline.addLast(new Http1FallbackHandler());
+        }
+        // 文件分块输出
+        pipeline.addLast(CHUNKED_WRITER, new ChunkedWriteHandler());
+        // 自定义http服务
+        pipeline.addLast(new HttpChannelHandler(handlerMapping, concurrencyLimiter));
+    }
+
+    private HttpServerCodec newHttpServerCodec() {
+        return new HttpServerCodec(HttpConstant.SWIFT_MAX_INITIAL_LINE_LENGTH, HttpConstant.SWIFT_MAX_HEADER_SIZE, HttpConstant.SWIFT_MAX_CHUNK_SIZE);
+    }
+
+    private void addHttp1Handlers(ChannelPipeline pipeline) {
+        // http request decode and response encode
+        pipeline.addLast(newHttpServerCodec());
+        addHttp1AggregateHandlers(pipeline, null);
+    }
+
+    private void addHttp1Handlers(ChannelPipeline pipeline, String baseName) {
+        pipeline.addBefore(baseName, null, newHttpServerCodec());
+        addHttp1AggregateHandlers(pipeline, baseName);
+    }
+
+    /**
+     * baseName 为空时添加到最后，否则添加到 baseName 之前
+     */
+    private void addHttp1AggregateHandlers(ChannelPipeline pipeline, String baseName) {
+        ChannelHandler[] handlers = new ChannelHandler[]{
+                // 请求头和请求体读取超时
+                new HttpReadTimeoutHandler(HttpConstant.SWIFT_CONNECTION_HEADER_TIMEOUT, HttpConstant.SWIFT_CONNECTION_BODY_TIMEOUT),
+                // 路由到流式接收的请求体不聚合，直接写入磁盘
+                new HttpStreamingHandler(handlerMapping, streamingIoGroup),
+                // 将消息头和体聚合成FullHttpRequest和FullHttpResponse
+                new HttpObjectAggregator(HttpConstant.SWIFT_MAX_CONTENT_LENGTH),
+                // 压缩处理，跳过小结果和已经压缩过的类型
+                new HttpCompressor(HttpConstant.SWIFT_COMPRESSION_LEVEL)
+        };
+        for (ChannelHandler handler : handlers) {
+            if (baseName == null) {
+                pipeline.addLast(handler);
+            } else {
+                pipeline.addBefore(baseName, null, handler);
+            }
+        }
+    }
+
+    /**
+     * h2c 连接没有升级时收到 http1.1 请求，换成 http1.1 的聚合和压缩处理；升级成功后移除
+     */
+    private class Http1FallbackHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof HttpMessage) {
+                // 添加到当前处理之后，移除后消息从当前位置继续向后传递
+                addHttp1AggregateHandlers(ctx.pipeline(), CHUNKED_WRITER);
+                ctx.pipeline().remove(this);
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent
+                    || evt instanceof CleartextHttp2ServerUpgradeHandler.PriorKnowledgeUpgradeEvent) {
+                ctx.pipeline().remove(this);
+            }
+            ctx.fireUserEventTriggered(evt);
+        }
+    }
+
+}
@@ -35,4 +35,53 @@ public @interface HttpService {
      */
     RequestMethod[] method() default {};
 
+    /**
+     * 是否以流式方式接收请求体，仅方法级别有效，默认 false
+     * <p>开启后请求体不再经过 HttpObjectAggregator 在内存中聚合：
+     * 表单和 multipart 请求通过 HttpPostRequestDecoder.offer() 边接收边解析，上传文件直接写入磁盘；
+     * 其他类型的请求体写入临时文件，通过 {@link HttpRequest#getBodyFile()} 或 {@link HttpRequest#getBodyStream()} 读取。
+     */
+    boolean streaming() default false;
+
+    /**
+     * 执行超时时间（秒），仅方法级别有效
+     * <p>默认 -1 使用 swift.executeTimeout，0 表示不限制。
+     * 超时后中断业务线程并立即返回 504。
+     */
+    int timeout() default -1;
+
+    /**
+     * 是否直接在 worker-group 线程中执行，仅方法级别有效，默认 false
+     * <p>省去切换到业务线程池的开销，只能用于不阻塞、耗时很短的纯计算方法，匹配的拦截器也会在 worker-group 线程中执行。
+     * 执行时间超过 swift.inlineBlockingThreshold 时输出警告，不受超时限制，不能同时设置 {@link #timeout()}。
+     */
+    boolean inline() default false;
+
+    /**
+     * 访问日志采样比例（0 ~ 1），仅方法级别有效
+     * <p>默认 -1 使用 swift.accessLog.sampleRate，只在异步访问日志（swift.accessLog.async=true）时有效。
+     * 调用频繁的接口（例如健康检查）可以设置为 0 或较小的比例。
+     */
+    double logSampleRate() default -1;
+
+    /**
+     * 业务线程池分组，类和方法级别有效，方法级别优先
+     * <p>默认为空使用共享的业务线程池。同一分组的方法使用一个独立的线程池，慢接口占满分组线程池时不影响其他接口。
+     * 分组的最大并发数、队列大小和拒绝策略可以通过 swift.group.[分组名].maxConcurrency、queueSize、rejectPolicy 配置，优先于注解。
+     */
+    String group() default "";
+
+    /**
+     * 分组线程池的最大并发数（最大线程数），类和方法级别有效，方法级别优先
+     * <p>默认 -1 使用 swift.group.maxConcurrency。设置了 maxConcurrency 但没有设置 {@link #group()} 时，
+     * 方法使用“类名.方法名”、类使用“类名”作为分组名。
+     */
+    int maxConcurrency() default -1;
+
+    /**
+     * 分组线程池的队列大小，类和方法级别有效，方法级别优先
+     * <p>默认 -1 使用 swift.group.queueSize，队列满时按 swift.group.rejectPolicy 处理。
+     */
+    int queueSize() default -1;
+
 }
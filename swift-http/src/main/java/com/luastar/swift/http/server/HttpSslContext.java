@@ -0,0 +1,84 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.base.utils.ObjUtils;
+import com.luastar.swift.http.constant.HttpConstant;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.*;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.security.SecureRandom;
+
+/**
+ * http server ssl 上下文
+ * 启动时创建一次，所有连接共享
+ * openssl（netty-tcnative/boringssl）可用时优先使用，并开启 session 缓存和 session ticket
+ */
+public class HttpSslContext {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpSslContext.class);
+
+    private HttpSslContext() {
+    }
+
+    /**
+     * 创建 SslContext，未配置证书时使用自签名证书
+     *
+     * @return
+     * @throws Exception
+     */
+    public static SslContext build() throws Exception {
+        SslContextBuilder builder;
+        if (ObjUtils.isNotEmpty(HttpConstant.SWIFT_SSL_CERT_FILE) && ObjUtils.isNotEmpty(HttpConstant.SWIFT_SSL_KEY_FILE)) {
+            logger.info("ssl证书:{}，私钥:{}", HttpConstant.SWIFT_SSL_CERT_FILE, HttpConstant.SWIFT_SSL_KEY_FILE);
+            builder = SslContextBuilder.forServer(new File(HttpConstant.SWIFT_SSL_CERT_FILE),
+                    new File(HttpConstant.SWIFT_SSL_KEY_FILE),
+                    ObjUtils.isEmpty(HttpConstant.SWIFT_SSL_KEY_PASSWORD) ? null : HttpConstant.SWIFT_SSL_KEY_PASSWORD);
+        } else {
+            logger.warn("未配置ssl证书，使用自签名证书");
+            SelfSignedCertificate ssc = new SelfSignedCertificate();
+            builder = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey());
+        }
+        SslProvider provider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+        logger.info("ssl provider:{}，session缓存大小:{}，session超时时间:{}秒", provider, HttpConstant.SWIFT_SSL_SESSION_CACHE_SIZE, HttpConstant.SWIFT_SSL_SESSION_TIMEOUT);
+        builder.sslProvider(provider)
+                .sessionCacheSize(HttpConstant.SWIFT_SSL_SESSION_CACHE_SIZE)
+                .sessionTimeout(HttpConstant.SWIFT_SSL_SESSION_TIMEOUT);
+        if (HttpConstant.SWIFT_HTTP2) {
+            // ALPN 协商 h2 和 http/1.1，http2 要求的加密套件
+            builder.ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                    .applicationProtocolConfig(new ApplicationProtocolConfig(
+                            ApplicationProtocolConfig.Protocol.ALPN,
+                            ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                            ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                            ApplicationProtocolNames.HTTP_2,
+                            ApplicationProtocolNames.HTTP_1_1));
+        }
+        SslContext sslContext = builder.build();
+        enableSessionTicket(sslContext);
+        return sslContext;
+    }
+
+    /**
+     * openssl 设置 ticket key 后开启 session ticket
+     * jdk provider 由 jdk 自身决定是否支持
+     *
+     * @param sslContext
+     */
+    private static void enableSessionTicket(SslContext sslContext) {
+        if (!(sslContext instanceof ReferenceCountedOpenSslContext)) {
+            return;
+        }
+        SecureRandom random = new SecureRandom();
+        byte[] name = new byte[OpenSslSessionTicketKey.NAME_SIZE];
+        byte[] hmacKey = new byte[OpenSslSessionTicketKey.HMAC_KEY_SIZE];
+        byte[] aesKey = new byte[OpenSslSessionTicketKey.AES_KEY_SIZE];
+        random.nextBytes(name);
+        random.nextBytes(hmacKey);
+        random.nextBytes(aesKey);
+        ((ReferenceCountedOpenSslContext) sslContext).sessionContext().setTicketKeys(new OpenSslSessionTicketKey(name, hmacKey, aesKey));
+    }
+
+}
@@ -0,0 +1,333 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import com.luastar.swift.http.route.HttpHandlerMapping;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
+import io.netty.handler.codec.http.multipart.HttpDataFactory;
+import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式接收请求体，放在 HttpObjectAggregator 之前
+ * <p>
+ * 请求行解析完成后，如果路由到 @HttpService(streaming = true) 的方法，请求体不再交给 HttpObjectAggregator 聚合：
+ * 表单和 multipart 请求体通过 HttpPostRequestDecoder.offer() 边接收边解析，数据写入磁盘；
+ * 其他类型的请求体直接写入临时文件。
+ * 请求体接收完成后向后传递 {@link HttpStreamingRequest}，内存占用与请求体大小无关。
+ * <p>
+ * 每个连接一个实例，路由判断在 worker-group 线程中执行；创建临时文件、写入磁盘和解析表单在 ioExecutor 中按顺序执行，
+ * 慢速磁盘不会阻塞同一个 worker-group 线程上的其他连接。未写入磁盘的数据超过高水位时暂停读取，低于低水位时恢复。
+ * 流式请求接收完成前收到的后续请求（管道化）暂存，完成后按顺序继续处理。
+ */
+public class HttpStreamingHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpStreamingHandler.class);
+
+    /**
+     * 全部写入磁盘
+     */
+    private static final HttpDataFactory factory = new DefaultHttpDataFactory(true);
+
+    /**
+     * 未写入磁盘的数据超过该值时暂停读取
+     */
+    private static final long PENDING_HIGH_WATER_MARK = 1024 * 1024;
+
+    /**
+     * 未写入磁盘的数据低于该值时恢复读取
+     */
+    private static final long PENDING_LOW_WATER_MARK = 256 * 1024;
+
+    private final HttpHandlerMapping handlerMapping;
+
+    private final EventExecutorGroup ioGroup;
+
+    /**
+     * 当前连接的磁盘操作线程，第一次流式接收时选择
+     */
+    private EventExecutor ioExecutor;
+
+    /**
+     * 正在接收的请求体，收到 LastHttpContent 后置空
+     */
+    private StreamingBody body;
+
+    /**
+     * 流式请求还没有交给后续处理，期间收到的消息暂存
+     */
+    private boolean inFlight;
+
+    private final Deque<Object> deferred = new ArrayDeque<>();
+
+    /**
+     * 已接收但还没有写入磁盘的字节数
+     */
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private final AtomicBoolean readSuspended = new AtomicBoolean();
+
+    public HttpStreamingHandler(HttpHandlerMapping handlerMapping, EventExecutorGroup ioGroup) {
+        this.handlerMapping = handlerMapping;
+        this.ioGroup = ioGroup;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpContent && body != null) {
+            offer(ctx, (HttpContent) msg);
+            return;
+        }
+        if (inFlight) {
+            deferred.add(msg);
+            return;
+        }
+        if (msg instanceof io.netty.handler.codec.http.HttpRequest && !(msg instanceof FullHttpRequest)) {
+            io.netty.handler.codec.http.HttpRequest request = (io.netty.handler.codec.http.HttpRequest) msg;
+            if (request.decoderResult().isSuccess() && isStreaming(request)) {
+                begin(ctx, request);
+                return;
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (body != null) {
+            StreamingBody current = body;
+            body = null;
+            ioExecutor.execute(current::destroy);
+        }
+        inFlight = false;
+        releaseDeferred();
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * 只根据请求行路由，不解析请求头和请求体
+     */
+    protected boolean isStreaming(io.netty.handler.codec.http.HttpRequest request) {
+        if (!handlerMapping.hasStreamingHandler()) {
+            return false;
+        }
+        FullHttpRequest probe = new DefaultFullHttpRequest(request.protocolVersion(), request.method(), request.uri());
+        try {
+            return handlerMapping.isStreamingRequest(new HttpRequest(probe, null, null));
+        } finally {
+            probe.release();
+        }
+    }
+
+    protected void begin(ChannelHandlerContext ctx, io.netty.handler.codec.http.HttpRequest request) {
+        if (HttpConstant.SWIFT_MAX_STREAMING_CONTENT_LENGTH > 0
+                && HttpUtil.getContentLength(request, -1L) > HttpConstant.SWIFT_MAX_STREAMING_CONTENT_LENGTH) {
+            ReferenceCountUtil.release(request);
+            sendError(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        if (HttpUtil.is100ContinueExpected(request)) {
+            ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+            HttpUtil.set100ContinueExpected(request, false);
+        }
+        if (ioExecutor == null) {
+            ioExecutor = ioGroup.next();
+        }
+        StreamingBody current = new StreamingBody(request);
+        this.body = current;
+        this.inFlight = true;
+        ioExecutor.execute(current::open);
+    }
+
+    protected void offer(ChannelHandlerContext ctx, HttpContent content) {
+        StreamingBody current = this.body;
+        int readable = content.content().readableBytes();
+        current.length += readable;
+        if (HttpConstant.SWIFT_MAX_STREAMING_CONTENT_LENGTH > 0 && current.length > HttpConstant.SWIFT_MAX_STREAMING_CONTENT_LENGTH) {
+            logger.warn("request body is too large : {}", current.length);
+            ReferenceCountUtil.release(content);
+            this.body = null;
+            ioExecutor.execute(current::destroy);
+            sendError(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        if (pendingBytes.addAndGet(readable) > PENDING_HIGH_WATER_MARK && readSuspended.compareAndSet(false, true)) {
+            ctx.channel().config().setAutoRead(false);
+        }
+        boolean last = content instanceof LastHttpContent;
+        if (last) {
+            current.trailingHeaders = ((LastHttpContent) content).trailingHeaders().copy();
+            this.body = null;
+        }
+        ioExecutor.execute(() -> {
+            try {
+                current.offer(content);
+            } finally {
+                ReferenceCountUtil.release(content);
+                if (pendingBytes.addAndGet(-readable) < PENDING_LOW_WATER_MARK && readSuspended.compareAndSet(true, false)) {
+                    ctx.channel().config().setAutoRead(true);
+                }
+            }
+            if (last) {
+                current.close();
+                ctx.executor().execute(() -> finish(ctx, current));
+            }
+        });
+    }
+
+    /**
+     * 磁盘操作完成后在 worker-group 线程中执行
+     */
+    protected void finish(ChannelHandlerContext ctx, StreamingBody current) {
+        if (!inFlight) {
+            // 连接已经关闭
+            ioExecutor.execute(current::destroy);
+            return;
+        }
+        inFlight = false;
+        if (current.error != null) {
+            logger.error(current.error.getMessage(), current.error);
+            ioExecutor.execute(current::destroy);
+            sendError(ctx, HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+        HttpStreamingRequest request = new HttpStreamingRequest(current.head, current.postRequestDecoder, current.bodyFile, current.length);
+        request.trailingHeaders().set(current.trailingHeaders);
+        // 数据交给 HttpStreamingRequest 管理
+        ctx.fireChannelRead(request);
+        // 继续处理暂存的后续请求，其中可能还有流式请求
+        Object msg;
+        while (!inFlight && ctx.channel().isActive() && (msg = deferred.poll()) != null) {
+            try {
+                channelRead(ctx, msg);
+            } catch (Exception e) {
+                ctx.fireExceptionCaught(e);
+            }
+        }
+    }
+
+    private void releaseDeferred() {
+        Object msg;
+        while ((msg = deferred.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private void sendError(ChannelHandlerContext ctx, HttpResponseStatus status) {
+        inFlight = false;
+        releaseDeferred();
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+        HttpUtil.setContentLength(response, 0);
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    /**
+     * 一个请求的请求体，open、offer、close 和 destroy 都在 ioExecutor 中执行
+     */
+    protected static class StreamingBody {
+
+        private final io.netty.handler.codec.http.HttpRequest head;
+
+        private HttpPostRequestDecoder postRequestDecoder;
+
+        private File bodyFile;
+
+        private FileChannel bodyChannel;
+
+        /**
+         * 只在 worker-group 线程中读写
+         */
+        private long length;
+
+        private HttpHeaders trailingHeaders;
+
+        /**
+         * 第一次出错后不再写入，完成时返回 400
+         */
+        private volatile Exception error;
+
+        StreamingBody(io.netty.handler.codec.http.HttpRequest head) {
+            this.head = head;
+        }
+
+        void open() {
+            try {
+                String contentType = head.headers().get(HttpHeaderNames.CONTENT_TYPE);
+                if (StringUtils.containsIgnoreCase(contentType, HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED)
+                        || StringUtils.containsIgnoreCase(contentType, HttpHeaderValues.MULTIPART_FORM_DATA)) {
+                    postRequestDecoder = new HttpPostRequestDecoder(factory, head);
+                } else {
+                    bodyFile = File.createTempFile("swift-body-", ".tmp");
+                    bodyChannel = new FileOutputStream(bodyFile).getChannel();
+                }
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        void offer(HttpContent content) {
+            if (error != null) {
+                return;
+            }
+            try {
+                if (postRequestDecoder != null) {
+                    postRequestDecoder.offer(content);
+                } else {
+                    while (content.content().isReadable()) {
+                        content.content().readBytes(bodyChannel, content.content().readableBytes());
+                    }
+                }
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        void close() {
+            if (bodyChannel != null) {
+                try {
+                    bodyChannel.close();
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+                bodyChannel = null;
+            }
+        }
+
+        /**
+         * 销毁已接收的数据
+         */
+        void destroy() {
+            close();
+            if (postRequestDecoder != null) {
+                postRequestDecoder.destroy();
+                postRequestDecoder = null;
+            }
+            if (bodyFile != null && !bodyFile.delete()) {
+                bodyFile.deleteOnExit();
+            }
+            bodyFile = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.luastar.swift.http.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
+
+import java.io.File;
+
+/**
+ * 流式接收完成的请求
+ * 请求体不在内存中：表单已由 postRequestDecoder 解析，其他类型的请求体保存在 bodyFile 中
+ */
+public class HttpStreamingRequest extends DefaultFullHttpRequest {
+
+    private final HttpPostRequestDecoder postRequestDecoder;
+
+    private final File bodyFile;
+
+    private final long bodyLength;
+
+    public HttpStreamingRequest(io.netty.handler.codec.http.HttpRequest head,
+                                HttpPostRequestDecoder postRequestDecoder,
+                                File bodyFile,
+                                long bodyLength) {
+        super(head.protocolVersion(), head.method(), head.uri(), Unpooled.EMPTY_BUFFER);
+        headers().set(head.headers());
+        this.postRequestDecoder = postRequestDecoder;
+        this.bodyFile = bodyFile;
+        this.bodyLength = bodyLength;
+    }
+
+    public HttpPostRequestDecoder getPostRequestDecoder() {
+        return postRequestDecoder;
+    }
+
+    public File getBodyFile() {
+        return bodyFile;
+    }
+
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * 销毁解析器并删除临时文件
+     */
+    public void destroyBody() {
+        if (postRequestDecoder != null) {
+            postRequestDecoder.destroy();
+        }
+        if (bodyFile != null && !bodyFile.delete()) {
+            bodyFile.deleteOnExit();
+        }
+    }
+
+}
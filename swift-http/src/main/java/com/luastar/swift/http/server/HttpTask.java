@@ -0,0 +1,516 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import com.luastar.swift.http.route.HandlerExecutionChain;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 业务处理任务，带执行超时时间
+ * <p>
+ * 提交到线程池时开始计时（包含排队时间），超时后由时间轮线程：
+ * 中断正在执行的业务线程，立即返回 504 并关闭连接；还在排队的任务开始执行时直接丢弃。
+ * 业务线程之后输出结果时通过 {@link #complete()} 判断，超时的任务不再输出。
+ * <p>
+ * 异步方法调用 {@link #setAsync(CompletionStage)} 后，业务线程返回时任务不结束，CompletionStage 完成后调用 {@link #finish()}；
+ * 超时后取消 CompletionStage，不能取消时直接结束任务，避免永远不完成的 CompletionStage 一直占用并发许可。
+ * <p>
+ * 线程池过载时排队过久的任务通过 {@link #expire()} 直接返回 503；开始执行时连接已经关闭的任务直接丢弃。
+ */
+public class HttpTask implements Runnable, TimerTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpTask.class);
+
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int TIMEOUT = 3;
+    private static final int EXPIRED = 4;
+
+    private static final HashedWheelTimer timer = new HashedWheelTimer(new DefaultThreadFactory("swift-timeout", true), 100, TimeUnit.MILLISECONDS);
+
+    /**
+     * 超时次数
+     */
+    private static final AtomicLong timeoutCount = new AtomicLong();
+
+    private final ChannelHandlerContext ctx;
+
+    private final HttpPipelineSequencer.Slot slot;
+
+    private final FullHttpRequest fullHttpRequest;
+
+    private final Consumer<HttpTask> handler;
+
+    /**
+     * http2 请求的 stream id
+     */
+    private final Integer streamId;
+
+    private final long createTime = System.currentTimeMillis();
+
+    /**
+     * 创建和开始执行的时间（System.nanoTime），用于统计排队和处理耗时
+     */
+    private final long createNanos = System.nanoTime();
+
+    private long startNanos;
+
+    /**
+     * 保护状态，不使用 synchronized，虚拟线程等待时不会占用载体线程
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int state = NEW;
+
+    private Thread runner;
+
+    private Timeout timeout;
+
+    private volatile HttpResponse httpResponse;
+
+    /**
+     * 在 worker-group 线程中确定业务线程池分组时已经查找过处理方法，业务线程直接复用
+     */
+    private HttpRequest routedRequest;
+
+    private HandlerExecutionChain mappedHandler;
+
+    private Runnable finishListener;
+
+    private boolean async = false;
+
+    /**
+     * 异步方法返回的 CompletionStage
+     */
+    private CompletionStage<?> stage;
+
+    /**
+     * 是否已经通知任务结束
+     */
+    private boolean finishFired = false;
+
+    /**
+     * 访问日志采样比例
+     */
+    private double logSampleRate = HttpConstant.SWIFT_ACCESS_LOG_SAMPLE_RATE;
+
+    public HttpTask(ChannelHandlerContext ctx, HttpPipelineSequencer.Slot slot, FullHttpRequest fullHttpRequest, Consumer<HttpTask> handler) {
+        this.ctx = ctx;
+        this.slot = slot;
+        this.fullHttpRequest = fullHttpRequest;
+        this.handler = handler;
+        this.streamId = Http2ServerHandler.getStreamId(fullHttpRequest.headers());
+    }
+
+    /**
+     * 设置超时时间，从任务创建开始计算，重复调用时以最后一次为准
+     *
+     * @param timeoutSeconds 小于等于 0 表示不限制
+     */
+    public void schedule(int timeoutSeconds) {
+        lock.lock();
+        try {
+            if (state >= DONE) {
+                return;
+            }
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+            if (timeoutSeconds <= 0) {
+                return;
+            }
+            long delay = TimeUnit.SECONDS.toMillis(timeoutSeconds) - (System.currentTimeMillis() - createTime);
+            timeout = timer.newTimeout(this, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取消超时
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 任务执行结束或者被丢弃后调用
+     */
+    public void setFinishListener(Runnable finishListener) {
+        this.finishListener = finishListener;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * 排队时间，纳秒
+     */
+    public long getQueueNanos() {
+        lock.lock();
+        try {
+            return startNanos - createNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 开始执行到现在的时间，纳秒
+     */
+    public long getRunNanos() {
+        lock.lock();
+        try {
+            return System.nanoTime() - startNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getLogSampleRate() {
+        return logSampleRate;
+    }
+
+    /**
+     * 设置方法级别的访问日志采样比例
+     */
+    public void setLogSampleRate(double logSampleRate) {
+        this.logSampleRate = logSampleRate;
+    }
+
+    /**
+     * 返回结果的输出
+     */
+    public HttpPipelineSequencer.Slot getSlot() {
+        return slot;
+    }
+
+    /**
+     * 设置已经查找过处理方法的请求，提交到线程池之前调用
+     *
+     * @param routedRequest
+     * @param mappedHandler 为 null 表示没有找到处理方法
+     */
+    public void setRoute(HttpRequest routedRequest, HandlerExecutionChain mappedHandler) {
+        this.routedRequest = routedRequest;
+        this.mappedHandler = mappedHandler;
+    }
+
+    /**
+     * 已经查找过处理方法的请求，为 null 表示需要在业务线程中查找
+     */
+    public HttpRequest getRoutedRequest() {
+        return routedRequest;
+    }
+
+    public HandlerExecutionChain getMappedHandler() {
+        return mappedHandler;
+    }
+
+    /**
+     * 设置返回结果，超时时用于判断是否已经开始输出
+     */
+    public void setHttpResponse(HttpResponse httpResponse) {
+        this.httpResponse = httpResponse;
+    }
+
+    /**
+     * 标记任务完成，返回 false 表示已经超时，不能再输出结果
+     */
+    public boolean complete() {
+        lock.lock();
+        try {
+            if (state == TIMEOUT) {
+                return false;
+            }
+            state = DONE;
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 标记为异步执行
+     *
+     * @param stage 异步方法返回的 CompletionStage，超时时取消
+     */
+    public void setAsync(CompletionStage<?> stage) {
+        boolean timedOut;
+        lock.lock();
+        try {
+            this.async = true;
+            this.stage = stage;
+            timedOut = state == TIMEOUT;
+        } finally {
+            lock.unlock();
+        }
+        // 方法返回前已经超时
+        if (timedOut) {
+            cancelStage(stage);
+        }
+    }
+
+    /**
+     * 异步执行结束
+     */
+    public void finish() {
+        lock.lock();
+        try {
+            if (state == RUNNING) {
+                state = DONE;
+            }
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        fireFinish();
+    }
+
+    /**
+     * 是否执行超时或者排队过久被丢弃
+     */
+    public boolean isTimeout() {
+        lock.lock();
+        try {
+            return state == TIMEOUT || state == EXPIRED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 排队过久被线程池丢弃，在取出任务的业务线程中执行，返回 503
+     */
+    public void expire() {
+        boolean respond;
+        lock.lock();
+        try {
+            respond = state == NEW;
+            if (respond) {
+                state = EXPIRED;
+                if (timeout != null) {
+                    timeout.cancel();
+                    timeout = null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (respond) {
+            logger.warn("业务线程池过载，请求排队时间过长，不再执行 : {}", fullHttpRequest.uri());
+            boolean keepAlive = HttpUtil.isKeepAlive(fullHttpRequest);
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SERVICE_UNAVAILABLE);
+            Http2ServerHandler.copyStreamId(fullHttpRequest.headers(), response.headers());
+            response.headers().set(HttpHeaderNames.RETRY_AFTER, HttpConstant.SWIFT_LIMIT_RETRY_AFTER);
+            HttpUtil.setContentLength(response, 0);
+            if (keepAlive || streamId != null) {
+                slot.writeLast(response);
+            } else {
+                slot.writeLast(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+        releaseRequest();
+        fireFinish();
+    }
+
+    @Override
+    public void run() {
+        boolean dropped = false;
+        boolean closed = false;
+        lock.lock();
+        try {
+            if (state != NEW) {
+                dropped = true;
+            } else if (!ctx.channel().isActive()) {
+                // 客户端已经断开，不再执行
+                closed = true;
+                state = DONE;
+                if (timeout != null) {
+                    timeout.cancel();
+                    timeout = null;
+                }
+            } else {
+                state = RUNNING;
+                runner = Thread.currentThread();
+                startNanos = System.nanoTime();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dropped || closed) {
+            if (dropped) {
+                logger.warn("请求排队超时，不再执行 : {}", fullHttpRequest.uri());
+            } else {
+                logger.warn("连接已关闭，不再执行 : {}", fullHttpRequest.uri());
+            }
+            releaseRequest();
+            fireFinish();
+            return;
+        }
+        try {
+            handler.accept(this);
+        } finally {
+            boolean finished;
+            lock.lock();
+            try {
+                runner = null;
+                finished = !async;
+                if (finished) {
+                    if (state == RUNNING) {
+                        state = DONE;
+                    }
+                    if (timeout != null) {
+                        timeout.cancel();
+                        timeout = null;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            // 清除超时产生的中断标记，避免影响线程池中的下一个任务
+            Thread.interrupted();
+            if (finished) {
+                fireFinish();
+            }
+        }
+    }
+
+    /**
+     * 时间轮线程执行
+     */
+    @Override
+    public void run(Timeout t) {
+        CompletionStage<?> asyncStage;
+        lock.lock();
+        try {
+            if (t != timeout || state >= DONE) {
+                return;
+            }
+            state = TIMEOUT;
+            timeout = null;
+            if (runner != null) {
+                runner.interrupt();
+            }
+            asyncStage = async ? stage : null;
+        } finally {
+            lock.unlock();
+        }
+        long count = timeoutCount.incrementAndGet();
+        logger.warn("请求执行超时，累计超时{}次 : {}", count, fullHttpRequest.uri());
+        writeTimeoutResponse();
+        if (asyncStage != null) {
+            cancelStage(asyncStage);
+        }
+    }
+
+    /**
+     * 取消异步方法的 CompletionStage，CompletableFuture 取消时同步执行完成回调，销毁请求；
+     * 之后直接结束任务释放并发许可，完成回调中再次结束时忽略
+     */
+    private void cancelStage(CompletionStage<?> asyncStage) {
+        try {
+            asyncStage.toCompletableFuture().cancel(true);
+        } catch (UnsupportedOperationException e) {
+            logger.warn("异步方法超时，CompletionStage 不支持取消 : {}", asyncStage.getClass().getName());
+        }
+        finish();
+    }
+
+    private void writeTimeoutResponse() {
+        HttpResponse response = this.httpResponse;
+        if (response != null && response.isChunked() && response.getChunkedWriter().isCommitted()) {
+            // 已经开始分块输出，http2 重置当前 stream，http1.1 只能关闭连接；分块缓存由业务线程销毁时释放
+            if (streamId != null) {
+                slot.writeLast(new Http2StreamReset(streamId, Http2Error.CANCEL));
+            } else {
+                ctx.close();
+            }
+            return;
+        }
+        FullHttpResponse fullHttpResponse = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.GATEWAY_TIMEOUT);
+        HttpUtil.setContentLength(fullHttpResponse, 0);
+        if (streamId != null) {
+            // http2 只结束当前 stream
+            Http2ServerHandler.setStreamId(fullHttpResponse.headers(), streamId);
+            slot.writeLast(fullHttpResponse);
+            return;
+        }
+        fullHttpResponse.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        slot.writeLast(fullHttpResponse).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private void fireFinish() {
+        lock.lock();
+        try {
+            if (finishFired) {
+                return;
+            }
+            finishFired = true;
+        } finally {
+            lock.unlock();
+        }
+        if (finishListener != null) {
+            try {
+                finishListener.run();
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void releaseRequest() {
+        if (fullHttpRequest instanceof HttpStreamingRequest) {
+            ((HttpStreamingRequest) fullHttpRequest).destroyBody();
+        }
+        ReferenceCountUtil.release(fullHttpRequest);
+    }
+
+    /**
+     * 累计超时次数
+     */
+    public static long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * 停止时间轮
+     */
+    public static void stopTimer() {
+        timer.stop();
+    }
+
+}
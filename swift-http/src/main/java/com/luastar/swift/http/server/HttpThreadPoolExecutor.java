@@ -1,49 +1,93 @@
 package com.luastar.swift.http.server;
 
+import com.luastar.swift.base.config.PropertyUtils;
 import com.luastar.swift.base.thread.QueuableCachedThreadPool;
 import com.luastar.swift.base.thread.ThreadPoolBuilder;
 import com.luastar.swift.base.thread.ThreadPoolUtils;
+import com.luastar.swift.base.thread.VirtualThreadPool;
 import com.luastar.swift.http.constant.HttpConstant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * http server 线程池
  * 这里使用tomcat的线程池，更适用于业务处理
  * java 线程池 先创建核心线程，满了后放入队列，队列满了后创建临时线程，超过最大线程数后执行拒绝策略
  * tomcat 线程池 先创建核心线程，满了后创建临时线程，超过最大线程数后加入到队列
+ * swift.executor=virtual 且 jdk 支持时使用虚拟线程，每个请求一个虚拟线程，用信号量限制并发
+ * 通过 @HttpService(group) 指定分组的方法使用分组独立的线程池，慢接口不会占满共享的业务线程池
  */
 public class HttpThreadPoolExecutor {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpThreadPoolExecutor.class);
 
-    private static QueuableCachedThreadPool threadPoolExecutor;
+    private static final String REJECT_POLICY_REJECT = "reject";
+
+    private static final String REJECT_POLICY_SHARED = "shared";
+
+    private static volatile ExecutorService threadPoolExecutor;
+
+    /**
+     * 共享业务线程池的排队时间，虚拟线程不统计
+     */
+    private static final LatencyHistogram queueTimeHistogram = new LatencyHistogram();
+
+    /**
+     * 业务线程池分组，启动时注册，之后只读
+     */
+    private static final Map<String, ExecutorGroup> groupMap = new ConcurrentHashMap<>();
 
     /**
      * 获取主线程池
      *
      * @return
      */
-    private static QueuableCachedThreadPool getThreadPoolExecutor() {
+    private static ExecutorService getThreadPoolExecutor() {
         if (threadPoolExecutor == null) {
             synchronized (HttpThreadPoolExecutor.class) {
                 if (threadPoolExecutor == null) {
-                    threadPoolExecutor = ThreadPoolBuilder.queuableCachedPool()
-                            .setThreadNamePrefix("business-group")
-                            .setDaemon(true)
-                            .setMinSize(HttpConstant.SWIFT_BUSINESS_THREADS)
-                            .setMaxSize(Math.min(HttpConstant.SWIFT_BUSINESS_THREADS * 4, 512))
-                            .setKeepAliveSecs(60)
-                            .setQueueSize(1024)
-                            .build();
+                    threadPoolExecutor = createThreadPoolExecutor();
                 }
             }
         }
         return threadPoolExecutor;
     }
 
+    private static ExecutorService createThreadPoolExecutor() {
+        if ("virtual".equalsIgnoreCase(HttpConstant.SWIFT_EXECUTOR)) {
+            if (VirtualThreadPool.isSupported()) {
+                logger.info("业务线程池使用虚拟线程，最大并发数:{}", HttpConstant.SWIFT_VIRTUAL_MAX_CONCURRENCY);
+                return ThreadPoolBuilder.virtualPool()
+                        .setThreadNamePrefix("business-virtual")
+                        .setMaxConcurrency(HttpConstant.SWIFT_VIRTUAL_MAX_CONCURRENCY)
+                        .setQueueSize(1024)
+                        .build();
+            }
+            logger.warn("当前jdk[{}]不支持虚拟线程，使用普通线程池", System.getProperty("java.version"));
+        }
+        return ThreadPoolBuilder.queuableCachedPool()
+                .setThreadNamePrefix("business-group")
+                .setDaemon(true)
+                .setMinSize(HttpConstant.SWIFT_BUSINESS_THREADS)
+                .setMaxSize(Math.min(HttpConstant.SWIFT_BUSINESS_THREADS * 4, 512))
+                .setKeepAliveSecs(60)
+                .setQueueSize(1024)
+                .setQueueTimeListener(queueTimeHistogram::record)
+                .setTargetDelayMillis(HttpConstant.SWIFT_QUEUE_TARGET_DELAY)
+                .setIntervalMillis(HttpConstant.SWIFT_QUEUE_INTERVAL)
+                .setExpiredHandler(HttpThreadPoolExecutor::expire)
+                .build();
+    }
+
     /**
      * 添加任务
      *
@@ -63,14 +107,315 @@ public class HttpThreadPoolExecutor {
             logger.debug("===线程池信息结束=========================================================");
         }
         */
-        getThreadPoolExecutor().submit(task);
+        getThreadPoolExecutor().execute(task);
+    }
+
+    /**
+     * 排队过久被丢弃的任务
+     */
+    private static void expire(Runnable task) {
+        if (task instanceof HttpTask) {
+            ((HttpTask) task).expire();
+        }
+    }
+
+    /**
+     * 添加任务到分组线程池，分组队列满时按分组的拒绝策略处理
+     *
+     * @param group 分组名，为空或未注册时使用共享的业务线程池
+     * @param task
+     * @throws RejectedExecutionException 线程池已满
+     */
+    public static void submit(String group, Runnable task) throws Exception {
+        ExecutorGroup executorGroup = group == null ? null : groupMap.get(group);
+        if (executorGroup == null) {
+            submit(task);
+            return;
+        }
+        try {
+            executorGroup.getExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            if (!executorGroup.shared) {
+                executorGroup.rejectedCount.incrementAndGet();
+                throw e;
+            }
+            executorGroup.sharedCount.incrementAndGet();
+            submit(task);
+        }
+    }
+
+    /**
+     * 注册分组，启动时由 HttpHandlerMapping 调用，配置项 swift.group.[分组名].* 优先于注解
+     *
+     * @param name           分组名
+     * @param maxConcurrency 注解指定的最大并发数，小于等于 0 使用默认值
+     * @param queueSize      注解指定的队列大小，小于等于 0 使用默认值
+     */
+    public static synchronized void registerGroup(String name, int maxConcurrency, int queueSize) {
+        String prefix = "swift.group." + name + ".";
+        int max = PropertyUtils.getInt(prefix + "maxConcurrency", maxConcurrency > 0 ? maxConcurrency : HttpConstant.SWIFT_GROUP_MAX_CONCURRENCY);
+        int queue = PropertyUtils.getInt(prefix + "queueSize", queueSize > 0 ? queueSize : HttpConstant.SWIFT_GROUP_QUEUE_SIZE);
+        String policy = PropertyUtils.getString(prefix + "rejectPolicy", HttpConstant.SWIFT_GROUP_REJECT_POLICY);
+        ExecutorGroup group = groupMap.get(name);
+        if (group != null) {
+            if (group.maxConcurrency != max || group.queueSize != queue) {
+                logger.warn("业务线程池分组[{}]的配置不一致，使用先注册的配置 maxConcurrency={}, queueSize={}", name, group.maxConcurrency, group.queueSize);
+            }
+            return;
+        }
+        if (max <= 0 || queue <= 0) {
+            throw new IllegalArgumentException("业务线程池分组[" + name + "]的 maxConcurrency 和 queueSize 必须大于 0");
+        }
+        if (!REJECT_POLICY_REJECT.equalsIgnoreCase(policy) && !REJECT_POLICY_SHARED.equalsIgnoreCase(policy)) {
+            throw new IllegalArgumentException("业务线程池分组[" + name + "]的 rejectPolicy 只能是 reject 或 shared : " + policy);
+        }
+        logger.info("业务线程池分组[{}]，maxConcurrency={}, queueSize={}, rejectPolicy={}", name, max, queue, policy);
+        groupMap.put(name, new ExecutorGroup(name, max, queue, REJECT_POLICY_SHARED.equalsIgnoreCase(policy)));
+    }
+
+    private static ExecutorService createGroupExecutor(String name, int maxConcurrency, int queueSize, LatencyHistogram queueTimeHistogram) {
+        if ("virtual".equalsIgnoreCase(HttpConstant.SWIFT_EXECUTOR) && VirtualThreadPool.isSupported()) {
+            return ThreadPoolBuilder.virtualPool()
+                    .setThreadNamePrefix("business-" + name)
+                    .setMaxConcurrency(maxConcurrency)
+                    .setQueueSize(queueSize)
+                    .build();
+        }
+        return ThreadPoolBuilder.queuableCachedPool()
+                .setThreadNamePrefix("business-" + name)
+                .setDaemon(true)
+                .setMinSize(Math.min(maxConcurrency, 4))
+                .setMaxSize(maxConcurrency)
+                .setKeepAliveSecs(60)
+                .setQueueSize(queueSize)
+                .setQueueTimeListener(queueTimeHistogram::record)
+                .setTargetDelayMillis(HttpConstant.SWIFT_QUEUE_TARGET_DELAY)
+                .setIntervalMillis(HttpConstant.SWIFT_QUEUE_INTERVAL)
+                .setExpiredHandler(HttpThreadPoolExecutor::expire)
+                .build();
+    }
+
+    /**
+     * 正在执行的任务数
+     */
+    public static int getActiveCount() {
+        return getActiveCount(getThreadPoolExecutor());
+    }
+
+    /**
+     * 当前线程数，虚拟线程为正在执行的任务数
+     */
+    public static int getPoolSize() {
+        return getPoolSize(getThreadPoolExecutor());
+    }
+
+    /**
+     * 排队的任务数
+     */
+    public static int getQueueSize() {
+        return getQueueSize(getThreadPoolExecutor());
+    }
+
+    /**
+     * 已提交未完成的任务数，包括排队的任务
+     */
+    public static int getSubmittedCount() {
+        return getSubmittedCount(getThreadPoolExecutor());
+    }
+
+    /**
+     * 已完成的任务数
+     */
+    public static long getCompletedTaskCount() {
+        return getCompletedTaskCount(getThreadPoolExecutor());
+    }
+
+    /**
+     * 排队过久被丢弃的任务数
+     */
+    public static long getExpiredCount() {
+        return getExpiredCount(getThreadPoolExecutor());
+    }
+
+    /**
+     * 排队时间
+     */
+    public static LatencyHistogram getQueueTimeHistogram() {
+        return queueTimeHistogram;
+    }
+
+    /**
+     * 已注册的分组
+     */
+    public static Collection<ExecutorGroup> getGroups() {
+        return Collections.unmodifiableCollection(groupMap.values());
+    }
+
+    static int getActiveCount(ExecutorService executor) {
+        if (executor instanceof VirtualThreadPool) {
+            return ((VirtualThreadPool) executor).getActiveCount();
+        }
+        return ((QueuableCachedThreadPool) executor).getActiveCount();
+    }
+
+    static int getPoolSize(ExecutorService executor) {
+        if (executor instanceof VirtualThreadPool) {
+            return ((VirtualThreadPool) executor).getActiveCount();
+        }
+        return ((QueuableCachedThreadPool) executor).getPoolSize();
+    }
+
+    static int getQueueSize(ExecutorService executor) {
+        if (executor instanceof VirtualThreadPool) {
+            return ((VirtualThreadPool) executor).getQueueSize();
+        }
+        return ((QueuableCachedThreadPool) executor).getQueue().size();
+    }
+
+    static int getSubmittedCount(ExecutorService executor) {
+        if (executor instanceof VirtualThreadPool) {
+            return ((VirtualThreadPool) executor).getActiveCount() + ((VirtualThreadPool) executor).getQueueSize();
+        }
+        return ((QueuableCachedThreadPool) executor).getSubmittedCount();
+    }
+
+    static long getExpiredCount(ExecutorService executor) {
+        if (executor instanceof VirtualThreadPool) {
+            return 0;
+        }
+        return ((QueuableCachedThreadPool) executor).getExpiredCount();
+    }
+
+    static long getCompletedTaskCount(ExecutorService executor) {
+        if (executor instanceof VirtualThreadPool) {
+            return ((VirtualThreadPool) executor).getCompletedTaskCount();
+        }
+        return ((QueuableCachedThreadPool) executor).getCompletedTaskCount();
     }
 
     /**
      * 关闭线程池
      */
     public static void shutdownGracefully() {
+        for (ExecutorGroup group : groupMap.values()) {
+            if (group.executor != null) {
+                ThreadPoolUtils.gracefulShutdown(group.executor, 60, TimeUnit.SECONDS);
+            }
+        }
         ThreadPoolUtils.gracefulShutdown(getThreadPoolExecutor(), 60, TimeUnit.SECONDS);
     }
 
+    /**
+     * 业务线程池分组，分组内的方法使用独立的线程池，线程池在第一次提交任务时创建
+     */
+    public static class ExecutorGroup {
+
+        private final String name;
+
+        private final int maxConcurrency;
+
+        private final int queueSize;
+
+        /**
+         * 队列满时交给共享的业务线程池执行
+         */
+        private final boolean shared;
+
+        private volatile ExecutorService executor;
+
+        private final AtomicLong rejectedCount = new AtomicLong();
+
+        private final AtomicLong sharedCount = new AtomicLong();
+
+        private final LatencyHistogram queueTimeHistogram = new LatencyHistogram();
+
+        private ExecutorGroup(String name, int maxConcurrency, int queueSize, boolean shared) {
+            this.name = name;
+            this.maxConcurrency = maxConcurrency;
+            this.queueSize = queueSize;
+            this.shared = shared;
+        }
+
+        private ExecutorService getExecutor() {
+            if (executor == null) {
+                synchronized (this) {
+                    if (executor == null) {
+                        executor = createGroupExecutor(name, maxConcurrency, queueSize, queueTimeHistogram);
+                    }
+                }
+            }
+            return executor;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public int getMaxQueueSize() {
+            return queueSize;
+        }
+
+        public String getRejectPolicy() {
+            return shared ? REJECT_POLICY_SHARED : REJECT_POLICY_REJECT;
+        }
+
+        /**
+         * 正在执行的任务数，线程池未创建时为 0
+         */
+        public int getActiveCount() {
+            ExecutorService executor = this.executor;
+            return executor == null ? 0 : HttpThreadPoolExecutor.getActiveCount(executor);
+        }
+
+        /**
+         * 排队的任务数
+         */
+        public int getQueueSize() {
+            ExecutorService executor = this.executor;
+            return executor == null ? 0 : HttpThreadPoolExecutor.getQueueSize(executor);
+        }
+
+        /**
+         * 已完成的任务数
+         */
+        public long getCompletedTaskCount() {
+            ExecutorService executor = this.executor;
+            return executor == null ? 0 : HttpThreadPoolExecutor.getCompletedTaskCount(executor);
+        }
+
+        /**
+         * 排队过久被丢弃的任务数
+         */
+        public long getExpiredCount() {
+            ExecutorService executor = this.executor;
+            return executor == null ? 0 : HttpThreadPoolExecutor.getExpiredCount(executor);
+        }
+
+        /**
+         * 排队时间
+         */
+        public LatencyHistogram getQueueTimeHistogram() {
+            return queueTimeHistogram;
+        }
+
+        /**
+         * 队列满后拒绝的任务数
+         */
+        public long getRejectedCount() {
+            return rejectedCount.get();
+        }
+
+        /**
+         * 队列满后交给共享的业务线程池执行的任务数
+         */
+        public long getSharedCount() {
+            return sharedCount.get();
+        }
+
+    }
+
 }
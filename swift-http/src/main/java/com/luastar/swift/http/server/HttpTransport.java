@@ -0,0 +1,100 @@
+package com.luastar.swift.http.server;
+
+import com.luastar.swift.http.constant.HttpConstant;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * http server 传输层选择
+ * auto：linux 下 native epoll 可用时使用 epoll，否则使用 nio
+ * epoll：强制使用 epoll，不可用时回退到 nio 并打印警告
+ * nio：使用 jdk nio
+ */
+public enum HttpTransport {
+
+    NIO,
+
+    EPOLL;
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+
+    /**
+     * 根据 swift.transport 配置选择传输层
+     *
+     * @return
+     */
+    public static HttpTransport select() {
+        String transport = StringUtils.trimToEmpty(HttpConstant.SWIFT_TRANSPORT).toLowerCase();
+        if ("nio".equals(transport)) {
+            return NIO;
+        }
+        if (Epoll.isAvailable()) {
+            return EPOLL;
+        }
+        if ("epoll".equals(transport)) {
+            logger.warn("native epoll 不可用，回退到 nio，原因：{}", String.valueOf(Epoll.unavailabilityCause()));
+        }
+        return NIO;
+    }
+
+    public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+        if (this == EPOLL) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+        return new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        if (this == EPOLL) {
+            return EpollServerSocketChannel.class;
+        }
+        return NioServerSocketChannel.class;
+    }
+
+    /**
+     * 同一端口绑定的次数，只有 epoll 且 swift.reusePortBinds 大于 1 时绑定多次
+     * <p>
+     * 只绑定一次时不开启 SO_REUSEPORT，误启动的第二个实例会因为端口被占用而失败，而不是悄悄分走一半连接
+     */
+    public int bindCount() {
+        if (this != EPOLL || HttpConstant.SWIFT_REUSE_PORT_BINDS <= 1) {
+            return 1;
+        }
+        return HttpConstant.SWIFT_REUSE_PORT_BINDS;
+    }
+
+    /**
+     * 设置传输层相关参数
+     * epoll：边缘触发、TCP_FASTOPEN、TCP_QUICKACK，绑定多次时开启 SO_REUSEPORT
+     *
+     * @param bootstrap
+     */
+    public void configure(ServerBootstrap bootstrap) {
+        if (this != EPOLL) {
+            return;
+        }
+        bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                .childOption(EpollChannelOption.TCP_QUICKACK, true);
+        if (bindCount() > 1) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (HttpConstant.SWIFT_TCP_FASTOPEN > 0) {
+            bootstrap.option(EpollChannelOption.TCP_FASTOPEN, HttpConstant.SWIFT_TCP_FASTOPEN);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.luastar.swift.http.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 业务线程等待连接可写或者轮到输出，每个连接一个
+ * <p>
+ * 使用 ReentrantLock/Condition 而不是 synchronized/wait，业务线程池为虚拟线程时等待不会占用载体线程；
+ * 没有等待者时 worker-group 线程通知不加锁。
+ */
+public class HttpWritabilityMonitor {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition writable = lock.newCondition();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * 最多等待指定时间，被通知、超时或者中断时返回
+     *
+     * @param millis
+     * @throws InterruptedException
+     */
+    public void await(long millis) throws InterruptedException {
+        lock.lockInterruptibly();
+        waiters.incrementAndGet();
+        try {
+            writable.await(millis, TimeUnit.MILLISECONDS);
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 唤醒所有等待者
+     */
+    public void signalAll() {
+        if (waiters.get() == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
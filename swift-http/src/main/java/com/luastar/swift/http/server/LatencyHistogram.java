@@ -0,0 +1,149 @@
+package com.luastar.swift.http.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图，按微秒对数线性分桶（同 HdrHistogram），记录时只有原子自增，不加锁
+ * <p>
+ * 小于 256 微秒的值每微秒一个桶；之后每个 2 的幂区间 [2^k, 2^(k+1)) 均分为 128 个桶，
+ * 相对误差小于 1/128，至少保留 2 位有效数字。超过 2^30 微秒（约 18 分钟）的值只计入总数。
+ * <p>
+ * 每个 2 的幂区间的桶在第一次记录时才分配，一般的请求耗时只会用到其中几个区间。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * 第 0 段记录 [0, 256) 微秒，第 c 段记录 [2^(c+7), 2^(c+8)) 微秒，桶宽 2^c
+     */
+    private static final int CHUNK_COUNT = 23;
+
+    /**
+     * 能分桶的最大值（不包含），微秒
+     */
+    public static final long MAX_MICROS = 1L << (CHUNK_COUNT + SUB_BUCKET_BITS);
+
+    private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(CHUNK_COUNT);
+
+    /**
+     * 超过 MAX_MICROS 的记录数
+     */
+    private final LongAdder overflow = new LongAdder();
+
+    /**
+     * 纳秒
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * 记录耗时
+     *
+     * @param nanos 纳秒，小于 0 时按 0 记录
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        sum.add(nanos);
+        long micros = nanos / 1000;
+        if (micros >= MAX_MICROS) {
+            overflow.increment();
+            return;
+        }
+        int chunk;
+        int index;
+        if (micros < 2 * SUB_BUCKET_COUNT) {
+            chunk = 0;
+            index = (int) micros;
+        } else {
+            int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+            chunk = shift;
+            index = (int) (micros >>> shift) - SUB_BUCKET_COUNT;
+        }
+        getChunk(chunk).incrementAndGet(index);
+    }
+
+    private AtomicLongArray getChunk(int chunk) {
+        AtomicLongArray buckets = chunks.get(chunk);
+        if (buckets == null) {
+            buckets = new AtomicLongArray(chunk == 0 ? 2 * SUB_BUCKET_COUNT : SUB_BUCKET_COUNT);
+            if (!chunks.compareAndSet(chunk, null, buckets)) {
+                buckets = chunks.get(chunk);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * 第 chunk 段第 index 个桶的上限（不包含），微秒
+     */
+    private static long upperBound(int chunk, int index) {
+        if (chunk == 0) {
+            return index + 1;
+        }
+        return (long) (SUB_BUCKET_COUNT + index + 1) << chunk;
+    }
+
+    /**
+     * 按上限统计累计记录数，每个上限只累计桶上限不超过它的桶，少计的部分小于一个桶宽；
+     * 记录的同时读取时各个桶之间不保证一致
+     *
+     * @param upperBounds 从小到大的上限，微秒
+     * @return 与 upperBounds 一一对应的累计记录数
+     */
+    public long[] getCumulativeCounts(long[] upperBounds) {
+        long[] counts = new long[upperBounds.length];
+        long cumulative = 0;
+        int bound = 0;
+        for (int chunk = 0; chunk < CHUNK_COUNT && bound < upperBounds.length; chunk++) {
+            AtomicLongArray buckets = chunks.get(chunk);
+            int length = chunk == 0 ? 2 * SUB_BUCKET_COUNT : SUB_BUCKET_COUNT;
+            for (int i = 0; i < length; i++) {
+                long upper = upperBound(chunk, i);
+                while (bound < upperBounds.length && upperBounds[bound] < upper) {
+                    counts[bound++] = cumulative;
+                }
+                if (bound == upperBounds.length) {
+                    break;
+                }
+                if (buckets != null) {
+                    cumulative += buckets.get(i);
+                }
+            }
+        }
+        while (bound < upperBounds.length) {
+            counts[bound++] = cumulative;
+        }
+        return counts;
+    }
+
+    /**
+     * 总记录数
+     */
+    public long getCount() {
+        long count = overflow.sum();
+        for (int chunk = 0; chunk < CHUNK_COUNT; chunk++) {
+            AtomicLongArray buckets = chunks.get(chunk);
+            if (buckets == null) {
+                continue;
+            }
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 总耗时，纳秒
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+}
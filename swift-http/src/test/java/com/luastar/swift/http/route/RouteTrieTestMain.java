@@ -0,0 +1,264 @@
+package com.luastar.swift.http.route;
+
+import com.luastar.swift.http.server.HttpRequest;
+import com.luastar.swift.http.server.HttpResponse;
+import com.luastar.swift.http.server.HttpService;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * 路由前缀树测试：同一个请求分别通过前缀树和遍历所有映射（AntPathMatcher）查找，
+ * 处理方法和歧义异常必须一致。
+ */
+public class RouteTrieTestMain {
+
+    private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private static final String[] METHODS = {"GET", "POST", "DELETE"};
+
+    private static final String[] PATHS = {
+            "", "/", "/nothing", "/trie", "/trie/",
+            // 固定地址、后缀匹配和结尾斜杠
+            "/trie/user", "/trie/user/", "/trie/user.json", "/trie/user.do.json",
+            "/trie/user/list", "/trie/user/list/", "/trie/user/list.json",
+            "/trie/report", "/trie/report.html", "/trie/report.html.json", "/trie/report.json",
+            // 变量
+            "/trie/user/1", "/trie/user/1/", "/trie/user/1.json", "/trie/user/1/detail", "/trie/user/1/detail.json",
+            "/trie/user/1/detail/", "/trie/user/1/2",
+            // 中间和结尾的 **
+            "/trie/file", "/trie/file/", "/trie/file/a", "/trie/file/a/b/c", "/trie/file/raw", "/trie/file/a/raw",
+            "/trie/file/a/b/raw", "/trie/file/a/b/raw.json", "/trie/file/a/b/raw/",
+            "/ping", "/trie/ping", "/trie/a/b/ping", "/trie/a/b/ping.json", "/other/ping",
+            // **.json 只匹配一段
+            "/trie/doc/a.json", "/trie/doc/a.b.json", "/trie/doc/a/b.json", "/trie/doc/.json", "/trie/doc/a.xml",
+            "/trie/doc/a.xml.json", "/trie/doc/a",
+            // 歧义
+            "/trie/order/1", "/trie/order/1.json", "/trie/order/1/",
+            // 查询参数不参与匹配
+            "/trie/user/1?name=a", "/trie/file/a/b/raw?x=/ping"
+    };
+
+    public static void main(String[] args) throws Exception {
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.registerSingleton("routeController", RouteController.class);
+        context.registerSingleton("rootController", RootController.class);
+        context.refresh();
+        HttpHandlerMapping handlerMapping = new HttpHandlerMapping();
+        handlerMapping.setApplicationContext(context);
+        handlerMapping.afterPropertiesSet();
+        List<String> failures = new ArrayList<>();
+        Map<String, String> results = new HashMap<>();
+        for (String method : METHODS) {
+            for (String path : PATHS) {
+                String trie = lookup(handlerMapping, method, path);
+                String scan = scan(handlerMapping, method, path);
+                results.put(method + " " + path, trie);
+                System.out.println(method + " " + path + " => " + trie);
+                if (!trie.equals(scan)) {
+                    failures.add(method + " " + path + " : trie=" + trie + ", scan=" + scan);
+                }
+            }
+        }
+        // 确认用例确实覆盖到了各种匹配结果
+        expect(results, failures, "GET /trie/user", "user");
+        expect(results, failures, "POST /trie/user", "userPost");
+        expect(results, failures, "GET /trie/user/", "user");
+        expect(results, failures, "GET /trie/user.json", "user");
+        expect(results, failures, "GET /trie/user/list", "userList");
+        expect(results, failures, "GET /trie/user/1.json", "userId");
+        expect(results, failures, "GET /trie/user/1/detail/", "userDetail");
+        expect(results, failures, "GET /trie/file/a/b/c", "fileAll");
+        expect(results, failures, "GET /trie/a/b/ping", "ping");
+        expect(results, failures, "GET /trie/doc/a.b.json", "docJson");
+        expect(results, failures, "GET /trie/doc/a.xml", "docXml");
+        expect(results, failures, "GET /trie/order/1", "ambiguous:orderA,orderB");
+        expect(results, failures, "GET /nothing", "none");
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.err.println(failure);
+            }
+            throw new AssertionError(failures.size() + " 个请求的路由结果不一致");
+        }
+        System.out.println("全部 " + results.size() + " 个请求的路由结果一致");
+        context.close();
+    }
+
+    private static void expect(Map<String, String> results, List<String> failures, String request, String expected) {
+        String actual = results.get(request);
+        if (!expected.equals(actual)) {
+            failures.add(request + " : expected=" + expected + ", actual=" + actual);
+        }
+    }
+
+    /**
+     * 通过前缀树查找
+     */
+    private static String lookup(HttpHandlerMapping handlerMapping, String method, String uri) {
+        HttpRequest request = newRequest(method, uri);
+        try {
+            return describe(handlerMapping.lookupHandlerMethod(request.getLookupPath(), request));
+        } catch (Exception e) {
+            return describe(e);
+        } finally {
+            request.destroy();
+        }
+    }
+
+    /**
+     * 先查找固定地址，没有匹配时遍历所有映射，与使用前缀树之前的查找方式相同
+     */
+    private static String scan(HttpHandlerMapping handlerMapping, String method, String uri) {
+        HttpRequest request = newRequest(method, uri);
+        try {
+            String lookupPath = request.getLookupPath();
+            Map<RequestMappingInfo, HandlerMethod> handlerMethods = handlerMapping.getHandlerMethods();
+            List<ScanMatch> matches = new ArrayList<>();
+            for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMethods.entrySet()) {
+                Set<String> patterns = entry.getKey().getPatternsCondition().getPatterns();
+                if (patterns.contains(lookupPath) && !PATH_MATCHER.isPattern(lookupPath)) {
+                    addMatch(entry, matches, request);
+                }
+            }
+            if (matches.isEmpty()) {
+                for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMethods.entrySet()) {
+                    addMatch(entry, matches, request);
+                }
+            }
+            if (matches.isEmpty()) {
+                return describe((HandlerMethod) null);
+            }
+            Comparator<ScanMatch> comparator = (match1, match2) -> match1.mapping.compareTo(match2.mapping, request);
+            Collections.sort(matches, comparator);
+            if (matches.size() > 1 && comparator.compare(matches.get(0), matches.get(1)) == 0) {
+                return describe(new IllegalStateException("Ambiguous handler methods mapped for HTTP path '"
+                        + request.getUri() + "': {" + matches.get(0).handlerMethod.getMethod() + ", " + matches.get(1).handlerMethod.getMethod() + "}"));
+            }
+            return describe(matches.get(0).handlerMethod);
+        } finally {
+            request.destroy();
+        }
+    }
+
+    private static void addMatch(Map.Entry<RequestMappingInfo, HandlerMethod> entry, List<ScanMatch> matches, HttpRequest request) {
+        RequestMappingInfo match = entry.getKey().getMatchingCondition(request);
+        if (match != null) {
+            matches.add(new ScanMatch(match, entry.getValue()));
+        }
+    }
+
+    private static HttpRequest newRequest(String method, String uri) {
+        return new HttpRequest(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.valueOf(method), uri), "test", "127.0.0.1");
+    }
+
+    private static String describe(HandlerMethod handlerMethod) {
+        return handlerMethod == null ? "none" : handlerMethod.getMethod().getName();
+    }
+
+    /**
+     * 歧义异常只比较两个方法，不比较顺序
+     */
+    private static String describe(Exception e) {
+        String message = String.valueOf(e.getMessage());
+        if (!(e instanceof IllegalStateException) || !message.startsWith("Ambiguous handler methods")) {
+            return "error:" + e;
+        }
+        String[] methods = message.substring(message.lastIndexOf('{') + 1, message.length() - 1).split(", ");
+        List<String> names = new ArrayList<>();
+        for (String method : methods) {
+            String name = method.substring(0, method.indexOf('('));
+            names.add(name.substring(name.lastIndexOf('.') + 1));
+        }
+        Collections.sort(names);
+        return "ambiguous:" + String.join(",", names);
+    }
+
+    private static class ScanMatch {
+
+        private final RequestMappingInfo mapping;
+        private final HandlerMethod handlerMethod;
+
+        private ScanMatch(RequestMappingInfo mapping, HandlerMethod handlerMethod) {
+            this.mapping = mapping;
+            this.handlerMethod = handlerMethod;
+        }
+
+    }
+
+    @HttpService("/trie")
+    public static class RouteController {
+
+        @HttpService("/user")
+        public void user(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService(value = "/user", method = RequestMethod.POST)
+        public void userPost(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/user/list")
+        public void userList(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/user/{id}")
+        public void userId(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService(value = "/user/{id}/detail", method = {RequestMethod.GET, RequestMethod.POST})
+        public void userDetail(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/report.html")
+        public void report(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/file/**")
+        public void fileAll(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/file/**/raw")
+        public void fileRaw(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/**/ping")
+        public void ping(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/doc/**.json")
+        public void docJson(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/doc/*.xml")
+        public void docXml(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/order/{a}")
+        public void orderA(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService("/order/{b}")
+        public void orderB(HttpRequest request, HttpResponse response) {
+        }
+
+    }
+
+    @HttpService
+    public static class RootController {
+
+        @HttpService("/**/ping")
+        public void rootPing(HttpRequest request, HttpResponse response) {
+        }
+
+        @HttpService(value = "/*", method = RequestMethod.DELETE)
+        public void rootDelete(HttpRequest request, HttpResponse response) {
+        }
+
+    }
+
+}